@@ -0,0 +1,18 @@
+// AnytimeBrain.java -- a Brain that can be told when to stop thinking
+
+public interface AnytimeBrain extends Brain {
+    // Pass as the deadline to think for as long as it takes
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     Like Brain.bestMove(), but returns by the deadline, a
+     System.nanoTime() value, with the best move found so far.
+     The move's complete field says whether the search got to
+     the end; a brain that runs out of time still returns its
+     first, cheapest answer, so only null means no play at all.
+     That first answer is always worked out, however early the
+     deadline, so the deadline can be overrun by about the cost
+     of one DefaultBrain call.
+    */
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move, long deadline);
+}
@@ -0,0 +1,233 @@
+import java.util.*;
+
+public class BitBoard implements TetrisBoard {
+
+	public static final int MAX_WIDTH = 64;
+
+	private int width;
+	private int height;
+
+	private long[] rows;
+	private int[] heights;
+	private int maxHeight;
+	private long fullRow;
+
+	private long[] backupRows;
+	private int[] backupHeights;
+	private int backupMaxHeight;
+
+	private long[] pieceRows;
+
+	private boolean committed = true;
+	private boolean DEBUG = true;
+
+	public BitBoard(int width, int height) {
+		if (width > MAX_WIDTH) throw new RuntimeException("BitBoard supports widths up to " + MAX_WIDTH + "!");
+
+		this.width = width;
+		this.height = height;
+
+		rows = new long[height];
+		heights = new int[width];
+		maxHeight = 0;
+		fullRow = (width == MAX_WIDTH) ? -1L : (1L << width) - 1;
+
+		backupRows = new long[height];
+		backupHeights = new int[width];
+		backupMaxHeight = 0;
+
+		pieceRows = new long[4];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getMaxHeight() {
+		return maxHeight;
+	}
+
+	public void sanityCheck() {
+		if (DEBUG) {
+			int maxHeightChecker = 0;
+			int[] heightsChecker = new int[width];
+
+			for (int j = 0; j < height; j++) {
+				if ((rows[j] & ~fullRow) != 0) throw new RuntimeException("Cells outside the board!");
+				long row = rows[j];
+				while (row != 0) {
+					heightsChecker[Long.numberOfTrailingZeros(row)] = j + 1;
+					row &= row - 1;
+				}
+				if (rows[j] != 0) maxHeightChecker = j + 1;
+			}
+
+			if (maxHeightChecker != maxHeight)				throw new RuntimeException("Incorrect maxHeight!");
+			if (!Arrays.equals(heightsChecker, heights))	throw new RuntimeException("Incorrect heights!");
+		}
+	}
+
+	public int dropHeight(Piece piece, int x) {
+		int dropY = 0;
+		int[] skirt = piece.getSkirt();
+		for (int i = 0; i < piece.getWidth(); i++) {
+			int currY = heights[x + i] - skirt[i];
+			dropY = Math.max(dropY, currY);
+		}
+		return dropY;
+	}
+
+	public int getColumnHeight(int x) {
+		return heights[x];
+	}
+
+	public int getRowWidth(int y) {
+		return Long.bitCount(rows[y]);
+	}
+
+	public boolean getGrid(int x, int y) {
+		return (!inBounds(x, y) || ((rows[y] >>> x) & 1L) != 0);
+	}
+
+	public int place(Piece piece, int x, int y) {
+		if (!committed) throw new RuntimeException("The board must be in the committed state before place() is called!");
+
+		committed = false;
+		backup();
+
+		TPoint[] body = piece.getBody();
+		for (TPoint tp : body) {
+			if (!inBounds(tp.x + x, tp.y + y)) return PLACE_OUT_BOUNDS;
+		}
+
+		int pieceHeight = piece.getHeight();
+		long[] masks = pieceRows(piece, x);
+		for (int i = 0; i < pieceHeight; i++) {
+			if ((rows[y + i] & masks[i]) != 0) return PLACE_BAD;
+		}
+
+		int status = PLACE_OK;
+		for (int i = 0; i < pieceHeight; i++) {
+			rows[y + i] |= masks[i];
+			if (rows[y + i] == fullRow) status = PLACE_ROW_FILLED;
+		}
+
+		for (TPoint tp : body) {
+			int placeX = tp.x + x;
+			heights[placeX] = Math.max(heights[placeX], tp.y + y + 1);
+			maxHeight = Math.max(maxHeight, heights[placeX]);
+		}
+
+		sanityCheck();
+		return status;
+	}
+
+	public int clearRows() {
+		if (committed) backup();
+		int rowsCleared = 0;
+		committed = false;
+
+		int toRow = 0;
+		for (int fromRow = 0; fromRow < maxHeight; fromRow++) {
+			if (rows[fromRow] == fullRow) {
+				rowsCleared++;
+			} else {
+				rows[toRow++] = rows[fromRow];
+			}
+		}
+
+		if (rowsCleared > 0) {
+			Arrays.fill(rows, toRow, maxHeight, 0L);
+			updateHeights(toRow);
+		}
+
+		sanityCheck();
+		return rowsCleared;
+	}
+
+	public void undo() {
+		if (committed) return;
+
+		System.arraycopy(backupRows, 0, rows, 0, backupMaxHeight);
+		if (maxHeight > backupMaxHeight) Arrays.fill(rows, backupMaxHeight, maxHeight, 0L);
+
+		int[] tempHeights = heights;
+		heights = backupHeights;
+		backupHeights = tempHeights;
+
+		maxHeight = backupMaxHeight;
+
+		commit();
+	}
+
+	public void commit() {
+		committed = true;
+	}
+
+	public void turnOnDebugMode() {
+		DEBUG = true;
+	}
+
+	public void turnOffDebugMode() {
+		DEBUG = false;
+	}
+
+	public String toString() {
+		StringBuilder buff = new StringBuilder();
+		for (int y = height - 1; y >= 0; y--) {
+			buff.append('|');
+			for (int x = 0; x < width; x++) {
+				if (getGrid(x,y)) {
+					buff.append('+');
+				} else {
+					buff.append(' ');
+				}
+			}
+			buff.append("|\n");
+		}
+		for (int x = 0; x < width + 2; x++) buff.append('-');
+		return buff.toString();
+	}
+
+	// Only the rows up to maxHeight can hold cells, so that is all we save
+	private void backup() {
+		System.arraycopy(rows, 0, backupRows, 0, maxHeight);
+		System.arraycopy(heights, 0, backupHeights, 0, width);
+		backupMaxHeight = maxHeight;
+	}
+
+	// Walks down from the top, giving each column the first row it shows up in
+	private void updateHeights(int top) {
+		Arrays.fill(heights, 0);
+		maxHeight = 0;
+
+		long seen = 0;
+		for (int j = top - 1; j >= 0 && seen != fullRow; j--) {
+			long fresh = rows[j] & ~seen;
+			if (rows[j] != 0 && maxHeight == 0) maxHeight = j + 1;
+			while (fresh != 0) {
+				heights[Long.numberOfTrailingZeros(fresh)] = j + 1;
+				fresh &= fresh - 1;
+			}
+			seen |= rows[j];
+		}
+	}
+
+	private long[] pieceRows(Piece piece, int x) {
+		if (pieceRows.length < piece.getHeight()) pieceRows = new long[piece.getHeight()];
+		long[] masks = piece.getRowMasks();
+		for (int i = 0; i < piece.getHeight(); i++) {
+			pieceRows[i] = masks[i] << x;
+		}
+		return pieceRows;
+	}
+
+	private boolean inBounds(int x, int y) {
+		return (x >= 0 && x < width && y >= 0 && y < height);
+	}
+
+}
@@ -0,0 +1,54 @@
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitBoardTest extends TetrisBoardTest {
+
+	@Override
+	protected TetrisBoard createBoard(int width, int height) {
+		return new BitBoard(width, height);
+	}
+
+	@Test
+	public void matchesBoardTest() {
+		Board expected = new Board(10, 24);
+		BitBoard actual = new BitBoard(10, 24);
+		Piece[] pieces = Piece.getPieces();
+		Random random = new Random(108);
+
+		for (int i = 0; i < 2000; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			for (int r = random.nextInt(4); r > 0; r--) piece = piece.fastRotation();
+			int x = random.nextInt(expected.getWidth() - piece.getWidth() + 1);
+			int y = expected.dropHeight(piece, x);
+			assertEquals(y, actual.dropHeight(piece, x));
+
+			if (y + piece.getHeight() > expected.getHeight()) {
+				expected = new Board(10, 24);
+				actual = new BitBoard(10, 24);
+				continue;
+			}
+
+			assertEquals(expected.place(piece, x, y), actual.place(piece, x, y));
+			assertEquals(expected.clearRows(), actual.clearRows());
+			if (random.nextInt(4) == 0) {
+				expected.undo();
+				actual.undo();
+			} else {
+				expected.commit();
+				actual.commit();
+			}
+
+			assertEquals(expected.toString(), actual.toString());
+			assertEquals(expected.getMaxHeight(), actual.getMaxHeight());
+			for (int col = 0; col < expected.getWidth(); col++) {
+				assertEquals(expected.getColumnHeight(col), actual.getColumnHeight(col));
+			}
+			for (int row = 0; row < expected.getHeight(); row++) {
+				assertEquals(expected.getRowWidth(row), actual.getRowWidth(row));
+			}
+		}
+	}
+
+}
@@ -1,36 +1,129 @@
 import java.util.*;
 
-public class Board {
+public class Board implements TetrisBoard {
 
 	private int width;
 	private int height;
 
-	private boolean[][] grid;
+	private boolean[][] rows;
+	private boolean[][] spareRows;
 	private int[] widths;
 	private int[] heights;
 	private int maxHeight;
 
-	private boolean[][] backupGrid;
-	private int[] backupWidths;
-	private int[] backupHeights;
-	private int backupMaxHeight;
+	private int totalHeight;
+	private int filledCells;
+	private int bumpiness;
+	private int totalWellDepth;
+
+	private int lastPlaceY;
+	private int lastPlaceHeight;
+	private int lastRowsCleared;
+
+	/*
+	 A row-wise adaptation of Zobrist hashing: rowCodes[y] is the XOR of
+	 the column keys of the cells filled in row y and travels with the row
+	 when rows move. A row at height y adds rowCodes[y] * rowKeys[y] into
+	 the hash, so a placed cell costs two multiplies and XORs, and a clear
+	 only re-weights the rows that moved instead of every cell in them.
+	 See getHash() for what this gives up against per-cell keys.
+	*/
+	private long[] rowCodes;
+	private long[] columnKeys;
+	private long[] rowKeys;
+	private long fullRowCode;
+	private long hash;
+
+	/*
+	 Dirty tracking: every mutating call advances epoch and stamps the rows
+	 and columns it changes. A renderer or incremental evaluator remembers
+	 getEpoch() and later asks which rows and columns changed since then.
+	*/
+	private long epoch;
+	private long[] rowStamps;
+	private long[] columnStamps;
+
+	/*
+	 What changed since lastSnapshot: chunks of BoardSnapshot.ROWS_PER_CHUNK
+	 rows with a stamped row, and whether any height moved. Kept as the
+	 stamps are made, so snapshot() only visits what it has to copy.
+	*/
+	private BoardSnapshot lastSnapshot;
+	private long lastSnapshotEpoch;
+	private BitSet dirtyChunks;
+	private boolean dirtyHeights;
+
+	private int[] journal;
+	private int journalSize;
+	private int undoMark;
+
+	private int[] marks;
+	private int markCount;
 
 	private boolean committed = true;
-	private boolean DEBUG = true;
+
+	/*
+	 How much checking place(), clearRows() and insertRowsAtBottom() do:
+	 VERIFY_OFF			none
+	 VERIFY_SAMPLED		a full sanityCheck() every verifyInterval operations
+	 VERIFY_INCREMENTAL	only the rows and columns touched since the last check
+	 VERIFY_FULL		a full sanityCheck() every time (the old DEBUG behavior)
+	 The default comes from the board.verify system property (off, sampled,
+	 incremental or full) and board.verify.interval, else incremental.
+	*/
+	public static final int VERIFY_OFF			= 0;
+	public static final int VERIFY_SAMPLED		= 1;
+	public static final int VERIFY_INCREMENTAL	= 2;
+	public static final int VERIFY_FULL			= 3;
+
+	private static final int DEFAULT_VERIFY_MODE = parseVerifyMode(System.getProperty("board.verify", "incremental"));
+	private static final int DEFAULT_VERIFY_INTERVAL = Integer.getInteger("board.verify.interval", 64);
+
+	private int verifyMode = DEFAULT_VERIFY_MODE;
+	private int verifyInterval = DEFAULT_VERIFY_INTERVAL;
+	private int verifyCount;
+	private BitSet touchedRows;
+	private BitSet touchedColumns;
+	private int[] widthsChecker;
+	private int[] heightsChecker;
 
 	public Board(int width, int height) {
 		this.width = width;
 		this.height = height;
 
-		grid = new boolean[width][height];
+		rows = new boolean[height][width];
+		spareRows = new boolean[height][];
 		widths = new int[height];
 		heights = new int[width];
 		maxHeight = 0;
 
-		backupGrid = new boolean[width][height];
-		backupWidths = new int[height];
-		backupHeights = new int[width];
-		backupMaxHeight = 0;
+		rowCodes = new long[height];
+		columnKeys = new long[width];
+		rowKeys = new long[height];
+		for (int i = 0; i < width; i++) columnKeys[i] = mix(0x436f6c756d6eL + i);
+		for (int j = 0; j < height; j++) rowKeys[j] = mix(0x526f77L + j) | 1L;
+		for (int i = 0; i < width; i++) fullRowCode ^= columnKeys[i];
+		hash = 0;
+
+		epoch = 0;
+		rowStamps = new long[height];
+		columnStamps = new long[width];
+		dirtyChunks = new BitSet(BoardSnapshot.chunkCount(height));
+
+		journal = new int[64];
+		journalSize = 0;
+		undoMark = 0;
+
+		marks = new int[3 * 8];
+		markCount = 0;
+
+		touchedRows = new BitSet(height);
+		touchedColumns = new BitSet(width);
+	}
+
+	public Board(Board other) {
+		this(other.width, other.height);
+		copyFrom(other);
 	}
 
 	public int getWidth() {
@@ -46,10 +139,14 @@ public class Board {
 	}
 
 	public void sanityCheck() {
-		if (DEBUG) {
+		if (verifyMode != VERIFY_OFF) {
+			if (widthsChecker == null) {
+				widthsChecker = new int[height];
+				heightsChecker = new int[width];
+			}
+			Arrays.fill(widthsChecker, 0);
+			Arrays.fill(heightsChecker, 0);
 			int maxHeightChecker = 0;
-			int[] widthsChecker = new int[height];
-			int[] heightsChecker = new int[width];
 
 			for (int i = 0; i < width; i++) {
 				for (int j = 0; j < height; j++) {
@@ -61,12 +158,39 @@ public class Board {
 				maxHeightChecker = Math.max(maxHeightChecker, heightsChecker[i]);
 			}
 
+			long hashChecker = 0;
+			for (int j = 0; j < height; j++) {
+				long code = 0;
+				for (int i = 0; i < width; i++) {
+					if (isFilled(i, j)) code ^= columnKeys[i];
+				}
+				hashChecker ^= code * rowKeys[j];
+			}
+
 			if (maxHeightChecker != maxHeight)				throw new RuntimeException("Incorrect maxHeight!");
 			if (!Arrays.equals(widthsChecker, widths))		throw new RuntimeException("Incorrect widths!");
 			if (!Arrays.equals(heightsChecker, heights))	throw new RuntimeException("Incorrect heights!");
+			if (hashChecker != hash)						throw new RuntimeException("Incorrect hash!");
+			checkStatistics();
 		}
 	}
 
+	public int getVerifyMode() {
+		return verifyMode;
+	}
+
+	public void setVerifyMode(int mode) {
+		if (mode < VERIFY_OFF || mode > VERIFY_FULL) throw new RuntimeException("Unknown verify mode: " + mode);
+		verifyMode = mode;
+		touchedRows.clear();
+		touchedColumns.clear();
+	}
+
+	public void setVerifyInterval(int interval) {
+		if (interval < 1) throw new RuntimeException("The verify interval must be positive!");
+		verifyInterval = interval;
+	}
+
 	public int dropHeight(Piece piece, int x) {
 		int dropY = 0;
 		for (int i = 0; i < piece.getWidth(); i++) {
@@ -76,6 +200,115 @@ public class Board {
 		return dropY;
 	}
 
+	/*
+	 dropHeight() for every legal x of this rotation in one sweep along
+	 heights: out[x] gets the landing y for x = 0 .. width - piece.getWidth(),
+	 the max of heights - skirt over the piece-wide window at x, and the
+	 number of legal x values is returned.
+	*/
+	public int dropHeights(Piece piece, int[] out) {
+		int[] skirt = piece.getSkirt();
+		int count = width - piece.getWidth() + 1;
+		if (count <= 0) return 0;
+
+		for (int x = 0; x < count; x++) {
+			int dropY = 0;
+			for (int i = 0; i < skirt.length; i++) {
+				int currY = heights[x + i] - skirt[i];
+				if (currY > dropY) dropY = currY;
+			}
+			out[x] = dropY;
+		}
+		return count;
+	}
+
+	// dropHeights() for each rotation in piece's fastRotation() ring; returns the number of rotations
+	public int dropHeights(Piece piece, int[][] out) {
+		int rotation = 0;
+		Piece current = piece;
+		do {
+			dropHeights(current, out[rotation++]);
+			current = current.fastRotation();
+		} while (current != null && current != piece);
+		return rotation;
+	}
+
+	// Result of previewPlacement(), used as a struct like Brain.Move
+	public static class Preview {
+		public int status;			// what place() would return
+		public int[] heights;		// column heights after the placement and its row clear
+		public int maxHeight;
+		public int totalHeight;
+		public int rowsCleared;
+		public int holes;
+		public int holeDelta;		// holes minus getHoles() before the placement
+
+		private int[] clearedRows = new int[4];
+	}
+
+	public Preview previewPlacement(Piece piece, int x, int y) {
+		return previewPlacement(piece, x, y, null);
+	}
+
+	/*
+	 Works out the features place() + clearRows() would leave behind --
+	 heights, maxHeight, rows cleared and holes -- from heights, widths and
+	 the piece's cells, without touching the grid or the undo journal, so
+	 a brain can rank candidates and only place() the winner. Safe to call
+	 from several threads at once as long as each passes its own Preview.
+	*/
+	public Preview previewPlacement(Piece piece, int x, int y, Preview preview) {
+		if (preview == null) preview = new Preview();
+		if (preview.heights == null || preview.heights.length != width) preview.heights = new int[width];
+
+		int pieceWidth = piece.getWidth();
+		int pieceHeight = piece.getHeight();
+		if (preview.clearedRows.length < pieceHeight) preview.clearedRows = new int[pieceHeight];
+		int[] pieceTops = piece.getTop();
+		int[] rowAdds = piece.getRowCounts();
+		int[] clearedRows = preview.clearedRows;
+
+		TPoint[] body = piece.getBody();
+		preview.status = PLACE_OK;
+		for (TPoint tp : body) {
+			int placeX = tp.x + x;
+			int placeY = tp.y + y;
+			if (!inBounds(placeX, placeY)) { preview.status = PLACE_OUT_BOUNDS; return preview; }
+			if ( isFilled(placeX, placeY)) { preview.status = PLACE_BAD; return preview; }
+		}
+
+		int rowsCleared = 0;
+		for (int j = 0; j < pieceHeight; j++) {
+			if (rowAdds[j] > 0 && widths[y + j] + rowAdds[j] == width) clearedRows[rowsCleared++] = y + j;
+		}
+		if (rowsCleared > 0) preview.status = PLACE_ROW_FILLED;
+
+		int newTotalHeight = 0;
+		int newMaxHeight = 0;
+		for (int i = 0; i < width; i++) {
+			int columnHeight = heights[i];
+			if (i >= x && i < x + pieceWidth && pieceTops[i - x] > 0) {
+				columnHeight = Math.max(columnHeight, y + pieceTops[i - x]);
+			}
+			if (rowsCleared > 0 && columnHeight > clearedRows[0]) {
+				int below = 0;
+				while (below < rowsCleared && clearedRows[below] < columnHeight) below++;
+				columnHeight -= below;
+				while (columnHeight > 0 && !previewFilled(piece, x, y, clearedRows, rowsCleared, i, columnHeight - 1)) columnHeight--;
+			}
+			preview.heights[i] = columnHeight;
+			newTotalHeight += columnHeight;
+			newMaxHeight = Math.max(newMaxHeight, columnHeight);
+		}
+
+		preview.rowsCleared = rowsCleared;
+		preview.maxHeight = newMaxHeight;
+		preview.totalHeight = newTotalHeight;
+		preview.holes = newTotalHeight - (filledCells + body.length - rowsCleared * width);
+		preview.holeDelta = preview.holes - getHoles();
+		return preview;
+	}
+
 	public int getColumnHeight(int x) {
 		return heights[x];
 	}
@@ -88,17 +321,102 @@ public class Board {
 		return (!inBounds(x, y) || isFilled(x, y));
 	}
 
-	public static final int PLACE_OK		 = 0;
-	public static final int PLACE_ROW_FILLED = 1;
-	public static final int PLACE_OUT_BOUNDS = 2;
-	public static final int PLACE_BAD		 = 3;
+	/*
+	 A 64-bit hash of the grid, equal for equal grids of the same size.
+	 It is not true Zobrist hashing with an independent key per cell:
+	 each row's code is multiplied by an odd key for its height, which
+	 keeps clearRows() cheap but makes the row terms related rather than
+	 independent. Collisions are somewhat likelier than the 2^-64 per
+	 pair of per-cell keys, and the low bits are the weakest (bit 0 is
+	 just a parity of the filled cells' column keys), so tables should
+	 mix the hash before indexing on it, as TranspositionTable does.
+	*/
+	public long getHash() {
+		return hash;
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	// Fills out with the rows changed after the given epoch
+	public BitSet getDirtyRows(long since, BitSet out) {
+		out.clear();
+		for (int j = 0; j < height; j++) {
+			if (rowStamps[j] > since) out.set(j);
+		}
+		return out;
+	}
+
+	// Fills out with the columns changed after the given epoch
+	public BitSet getDirtyColumns(long since, BitSet out) {
+		out.clear();
+		for (int i = 0; i < width; i++) {
+			if (columnStamps[i] > since) out.set(i);
+		}
+		return out;
+	}
+
+	/*
+	 Board statistics, kept up to date by every height and cell change so
+	 brains can read them in O(1) after place()/clearRows().
+	 A hole is an empty cell below the top of its column, and a well is
+	 how far a column sits below the lower of its neighbors (the side
+	 walls count as infinitely tall).
+	*/
+	public int getTotalHeight() {
+		return totalHeight;
+	}
+
+	public int getHoles() {
+		return totalHeight - filledCells;
+	}
+
+	public int getBumpiness() {
+		return bumpiness;
+	}
+
+	public int getWellDepth(int x) {
+		int left  = (x == 0) ? Integer.MAX_VALUE : heights[x - 1];
+		int right = (x == width - 1) ? Integer.MAX_VALUE : heights[x + 1];
+		int rim = Math.min(left, right);
+		return (rim == Integer.MAX_VALUE) ? 0 : Math.max(0, rim - heights[x]);
+	}
+
+	public int getTotalWellDepth() {
+		return totalWellDepth;
+	}
+
+	/*
+	 Where the latest place() put its piece, and how many rows the latest
+	 clearRows() removed, for brains rating the result. They are journaled,
+	 so undo() and pop() bring back the values that went with the board.
+	 getHash() covers only the grid; TranspositionTable.scoreKey() adds these.
+	*/
+	public int getLastPlaceY() {
+		return lastPlaceY;
+	}
+
+	public int getLastPlaceHeight() {
+		return lastPlaceHeight;
+	}
+
+	public int getLastRowsCleared() {
+		return lastRowsCleared;
+	}
 
 	public int place(Piece piece, int x, int y) {
 		if (!committed) throw new RuntimeException("The board must be in the committed state before place() is called!");
 
 		int status = PLACE_OK;
 		committed = false;
-		backup();
+		epoch++;
+		logLastMove();
+		lastPlaceY = y;
+		lastPlaceHeight = piece.getHeight();
+		lastRowsCleared = 0;
+		log(maxHeight, OP_MAX_HEIGHT);
+		logHash();
 
 		for (TPoint tp : piece.getBody()) {
 			int placeX = tp.x + x;
@@ -107,21 +425,28 @@ public class Board {
 			if (!inBounds(placeX, placeY)) return PLACE_OUT_BOUNDS;
 			if ( isFilled(placeX, placeY)) return PLACE_BAD;
 
-			grid[placeX][placeY] = true;
+			rows[placeY][placeX] = true;
+			log(placeX, placeY, OP_CELL);
+			touch(placeX, placeY);
+			stampCell(placeX, placeY);
+
+			hash ^= rowCodes[placeY] * rowKeys[placeY];
+			rowCodes[placeY] ^= columnKeys[placeX];
+			hash ^= rowCodes[placeY] * rowKeys[placeY];
 
 			widths[placeY]++;
-			heights[placeX] = Math.max(heights[placeX], placeY + 1);
+			filledCells++;
+			if (heights[placeX] < placeY + 1) setHeight(placeX, placeY + 1);
 			maxHeight = Math.max(maxHeight, heights[placeX]);
 
 			if (widths[placeY] == width) status = PLACE_ROW_FILLED;
 		}
 
-		sanityCheck();
+		verify();
 		return status;
 	}
 
 	public int clearRows() {
-		if (committed) backup();
 		int rowsCleared = 0;
 		committed = false;
 
@@ -130,62 +455,312 @@ public class Board {
 		for (toRow = 0; toRow < maxHeight; toRow++) {
 			if (widths[toRow] == width) break;
 		}
+		if (toRow == maxHeight) {
+			if (lastRowsCleared != 0) {
+				logLastMove();
+				lastRowsCleared = 0;
+			}
+			verify();
+			return rowsCleared;
+		}
 
-		for (fromRow = toRow; fromRow < maxHeight; fromRow++) {
+		// Rows are moved by reference; the cleared ones are blanked and reused on top
+		int oldMaxHeight = maxHeight;
+		epoch++;
+		stampRows(toRow, oldMaxHeight, toRow);
+		logLastMove();
+		logHash();
+		toggleRows(toRow, oldMaxHeight);
+		int start = journalSize;
+		for (fromRow = toRow; fromRow < oldMaxHeight; fromRow++) {
 			if (widths[fromRow] < width) {
-				for (int i = 0; i < width; i++) {
-					grid[i][toRow] = grid[i][fromRow];
-				}
+				rows[toRow] = rows[fromRow];
 				widths[toRow] = widths[fromRow];
+				rowCodes[toRow] = rowCodes[fromRow];
 				toRow++;
 			} else {
-				rowsCleared++;
+				spareRows[rowsCleared++] = rows[fromRow];
+				log(fromRow);
 			}
 		}
+		log(rowsCleared, oldMaxHeight, OP_CLEAR);
+		filledCells -= rowsCleared * width;
+		if (verifyMode == VERIFY_INCREMENTAL) touchedRows.set(journal[start], oldMaxHeight);
 
-		for (int i = 0; i < width; i++) {
-			Arrays.fill(grid[i], toRow, height,false);
+		toggleRows(journal[start], toRow);
+		for (int i = 0; i < rowsCleared; i++, toRow++) {
+			Arrays.fill(spareRows[i], false);
+			rows[toRow] = spareRows[i];
+			widths[toRow] = 0;
+			rowCodes[toRow] = 0;
+			spareRows[i] = null;
 		}
-		Arrays.fill(widths, toRow, height, 0);
 
-		updateHeights();
+		updateHeights(start, rowsCleared);
+		lastRowsCleared = rowsCleared;
 
-		sanityCheck();
+		verify();
 		return rowsCleared;
 	}
 
-	public void undo() {
-		if (committed) return;
+	/*
+	 Pushes count garbage rows in from the bottom, each full except for
+	 holeColumn, for versus play. Like place() it needs a committed board,
+	 leaves the board uncommitted and is backed out by undo(). If the stack
+	 would be pushed out through the top nothing changes and
+	 PLACE_OUT_BOUNDS is returned.
+	*/
+	public int insertRowsAtBottom(int count, int holeColumn) {
+		if (!committed) throw new RuntimeException("The board must be in the committed state before insertRowsAtBottom() is called!");
+		if (holeColumn < 0 || holeColumn >= width) throw new RuntimeException("Bad hole column: " + holeColumn);
 
-		boolean[][] tempGrid = grid;
-		grid = backupGrid;
-		backupGrid = tempGrid;
+		committed = false;
+		if (count <= 0) return PLACE_OK;
+		if (maxHeight + count > height) return PLACE_OUT_BOUNDS;
 
-		int[] tempWidths = widths;
-		widths = backupWidths;
-		backupWidths = tempWidths;
+		int oldMaxHeight = maxHeight;
+		epoch++;
+		stampRows(0, oldMaxHeight + count, -1);
+		logHash();
+		log(count, holeColumn, oldMaxHeight, OP_GARBAGE);
 
-		int[] tempHeights = heights;
-		heights = backupHeights;
-		backupHeights = tempHeights;
+		toggleRows(0, oldMaxHeight);
+		for (int i = 0; i < count; i++) spareRows[i] = rows[oldMaxHeight + i];
+		for (int j = oldMaxHeight - 1; j >= 0; j--) {
+			rows[j + count] = rows[j];
+			widths[j + count] = widths[j];
+			rowCodes[j + count] = rowCodes[j];
+		}
+		for (int i = 0; i < count; i++) {
+			rows[i] = spareRows[i];
+			Arrays.fill(rows[i], true);
+			rows[i][holeColumn] = false;
+			widths[i] = width - 1;
+			rowCodes[i] = fullRowCode ^ columnKeys[holeColumn];
+			spareRows[i] = null;
+		}
+		toggleRows(0, oldMaxHeight + count);
+		filledCells += count * (width - 1);
 
-		int tempMaxHeight = maxHeight;
-		maxHeight = backupMaxHeight;
-		backupMaxHeight = tempMaxHeight;
+		maxHeight = 0;
+		for (int i = 0; i < width; i++) {
+			if (i != holeColumn || heights[i] > 0) changeHeight(i, heights[i] + count);
+			maxHeight = Math.max(maxHeight, heights[i]);
+		}
+		if (verifyMode == VERIFY_INCREMENTAL) {
+			touchedRows.set(0, maxHeight);
+			touchedColumns.set(0, width);
+		}
+
+		verify();
+		return PLACE_OK;
+	}
 
+	public void undo() {
+		if (committed) return;
+		rollback(undoMark);
 		commit();
 	}
 
 	public void commit() {
 		committed = true;
+		if (markCount == 0) journalSize = 0;
+		undoMark = journalSize;
+	}
+
+	/*
+	 push() opens a nested level: the board counts as committed again, so a
+	 search can place() and clearRows() on top of uncommitted changes.
+	 pop() rolls back everything done since the matching push() and restores
+	 the committed state it had, so N plies unwind in LIFO order without
+	 copying the board. Inside a level commit() and undo() work as usual.
+	*/
+	public void push() {
+		if (markCount * 3 == marks.length) marks = Arrays.copyOf(marks, marks.length * 2);
+		marks[markCount * 3] = journalSize;
+		marks[markCount * 3 + 1] = undoMark;
+		marks[markCount * 3 + 2] = committed ? 1 : 0;
+		markCount++;
+
+		committed = true;
+		undoMark = journalSize;
+	}
+
+	public void pop() {
+		if (markCount == 0) throw new RuntimeException("pop() called without a matching push()!");
+
+		markCount--;
+		rollback(marks[markCount * 3]);
+		undoMark = marks[markCount * 3 + 1];
+		committed = (marks[markCount * 3 + 2] == 1);
+	}
+
+	public int getDepth() {
+		return markCount;
+	}
+
+	/*
+	 Makes this board a copy of other's current contents, reusing this
+	 board's arrays. Only the rows below the taller of the two stacks are
+	 copied. The result is committed with an empty undo history.
+	*/
+	public void copyFrom(Board other) {
+		if (other.width != width || other.height != height) throw new RuntimeException("copyFrom() needs a board of the same size!");
+		if (other == this) return;
+
+		int top = Math.max(maxHeight, other.maxHeight);
+		for (int j = 0; j < top; j++) System.arraycopy(other.rows[j], 0, rows[j], 0, width);
+		System.arraycopy(other.widths, 0, widths, 0, top);
+		System.arraycopy(other.rowCodes, 0, rowCodes, 0, top);
+		System.arraycopy(other.heights, 0, heights, 0, width);
+		maxHeight = other.maxHeight;
+
+		totalHeight = other.totalHeight;
+		filledCells = other.filledCells;
+		bumpiness = other.bumpiness;
+		totalWellDepth = other.totalWellDepth;
+		hash = other.hash;
+
+		lastPlaceY = other.lastPlaceY;
+		lastPlaceHeight = other.lastPlaceHeight;
+		lastRowsCleared = other.lastRowsCleared;
+
+		forgetHistory(top);
+	}
+
+	// Empties the board in place, so pooled boards can be handed out again
+	public void reset() {
+		int top = maxHeight;
+		for (int j = 0; j < top; j++) Arrays.fill(rows[j], false);
+		Arrays.fill(widths, 0, top, 0);
+		Arrays.fill(rowCodes, 0, top, 0L);
+		Arrays.fill(heights, 0);
+		maxHeight = 0;
+
+		totalHeight = 0;
+		filledCells = 0;
+		bumpiness = 0;
+		totalWellDepth = 0;
+		hash = 0;
+
+		lastPlaceY = 0;
+		lastPlaceHeight = 0;
+		lastRowsCleared = 0;
+
+		forgetHistory(top);
+	}
+
+	/*
+	 Returns an immutable snapshot of the current contents. Chunks of rows
+	 (and the heights) that have not changed since the previous snapshot
+	 are shared with it, so taking snapshots as a game or search goes
+	 along costs about as much as the rows that changed in between.
+	*/
+	public BoardSnapshot snapshot() {
+		if (lastSnapshot != null && lastSnapshotEpoch == epoch) return lastSnapshot;
+
+		int words = BoardSnapshot.wordsPerRow(width);
+		long[][] oldChunks = (lastSnapshot == null) ? new long[0][] : lastSnapshot.getChunks();
+		long[][] chunks = Arrays.copyOf(oldChunks, BoardSnapshot.chunkCount(maxHeight));
+		dirtyChunks.set(Math.min(oldChunks.length, chunks.length), chunks.length);
+
+		for (int c = dirtyChunks.nextSetBit(0); c >= 0 && c < chunks.length; c = dirtyChunks.nextSetBit(c + 1)) {
+			int from = c * BoardSnapshot.ROWS_PER_CHUNK;
+			int to = Math.min(from + BoardSnapshot.ROWS_PER_CHUNK, maxHeight);
+			long[] chunk = new long[BoardSnapshot.ROWS_PER_CHUNK * words];
+			for (int j = from; j < to; j++) {
+				for (int w = 0; w < words; w++) chunk[(j - from) * words + w] = getRowBits(j, w);
+			}
+			chunks[c] = chunk;
+		}
+
+		int[] snapshotHeights = (lastSnapshot == null || dirtyHeights) ? heights.clone() : lastSnapshot.getHeights();
+
+		lastSnapshot = new BoardSnapshot(width, height, chunks, snapshotHeights, maxHeight);
+		lastSnapshotEpoch = epoch;
+		dirtyChunks.clear();
+		dirtyHeights = false;
+		return lastSnapshot;
+	}
+
+	// Loads a snapshot of a board this size; the result is committed with no undo history
+	public void restore(BoardSnapshot snapshot) {
+		if (snapshot.getWidth() != width || snapshot.getHeight() != height) throw new RuntimeException("restore() needs a snapshot of the same size!");
+
+		reset();
+
+		int words = BoardSnapshot.wordsPerRow(width);
+		long[][] chunks = snapshot.getChunks();
+		for (int j = 0; j < snapshot.getMaxHeight(); j++) {
+			long[] chunk = chunks[j / BoardSnapshot.ROWS_PER_CHUNK];
+			int start = (j % BoardSnapshot.ROWS_PER_CHUNK) * words;
+			for (int w = 0; w < words; w++) loadBits(j, w, chunk[start + w]);
+		}
+		endLoad();
+
+		lastSnapshot = snapshot;
+		lastSnapshotEpoch = epoch;
+		dirtyChunks.clear();
+		dirtyHeights = false;
+	}
+
+	/*
+	 Bulk loading for restore() and BoardCodec: after reset(), feed each
+	 row's cells bottom-up as 64-bit words (bit i of word w is column
+	 64 * w + i), then call endLoad(). Heights fall out of the loading
+	 order, so nothing is rescanned afterwards.
+	*/
+	void loadBits(int y, int word, long bits) {
+		while (bits != 0) {
+			int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+			rows[y][i] = true;
+			rowCodes[y] ^= columnKeys[i];
+			widths[y]++;
+			filledCells++;
+			heights[i] = y + 1;
+			bits &= bits - 1;
+		}
+	}
+
+	void endLoad() {
+		maxHeight = 0;
+		totalHeight = 0;
+		bumpiness = 0;
+		totalWellDepth = 0;
+		for (int i = 0; i < width; i++) {
+			maxHeight = Math.max(maxHeight, heights[i]);
+			totalHeight += heights[i];
+			if (i > 0) bumpiness += Math.abs(heights[i - 1] - heights[i]);
+		}
+		for (int i = 0; i < width; i++) totalWellDepth += getWellDepth(i);
+
+		hash = 0;
+		for (int j = 0; j < maxHeight; j++) hash ^= rowCodes[j] * rowKeys[j];
+
+		epoch++;
+		stampRows(0, maxHeight, -1);
+		dirtyHeights = true;
+		verify();
+	}
+
+	// Row y's cells from column 64 * word as bits, for encoders
+	long getRowBits(int y, int word) {
+		long bits = 0;
+		int from = word << 6;
+		int to = Math.min(width, from + 64);
+		boolean[] row = rows[y];
+		for (int i = from; i < to; i++) {
+			if (row[i]) bits |= 1L << i;
+		}
+		return bits;
 	}
 
 	public void turnOnDebugMode() {
-		DEBUG = true;
+		setVerifyMode(VERIFY_FULL);
 	}
 
 	public void turnOffDebugMode() {
-		DEBUG = false;
+		setVerifyMode(VERIFY_OFF);
 	}
 
 	public String toString() {
@@ -205,33 +780,347 @@ public class Board {
 		return buff.toString();
 	}
 
-	private void backup() {
-		for (int i = 0; i < width; i++) System.arraycopy(grid[i], 0, backupGrid[i], 0, height);
-		System.arraycopy(widths, 0, backupWidths, 0, height);
-		System.arraycopy(heights, 0, backupHeights, 0, width);
-		backupMaxHeight = maxHeight;
+	/*
+	 The journal holds just what changed since the last commit(), so undo()
+	 costs as much as the change instead of a copy of the whole grid.
+	 Each entry is its arguments followed by its op code, so rollback()
+	 can read the entries back to front.
+	*/
+	private static final int OP_CELL		= 0;	// x y: cell set, widths[y] incremented
+	private static final int OP_HEIGHT		= 1;	// x oldHeight
+	private static final int OP_MAX_HEIGHT	= 2;	// oldMaxHeight
+	private static final int OP_CLEAR		= 3;	// cleared rows (ascending) count oldMaxHeight
+	private static final int OP_GARBAGE		= 4;	// count holeColumn oldMaxHeight
+	private static final int OP_HASH		= 5;	// low and high halves of the old hash
+	private static final int OP_LAST_MOVE	= 6;	// old lastPlaceY lastPlaceHeight lastRowsCleared
+
+	private void log(int a) {
+		ensureJournal(1);
+		journal[journalSize++] = a;
 	}
 
-	private void updateHeights() {
-		maxHeight = 0;
-		for (int i = 0; i < width; i++) {
-			for(int j = heights[i] - 1; j >= 0; j--) {
-				if(isFilled(i, j)) {
-					heights[i] = j + 1;
+	private void log(int a, int b) {
+		ensureJournal(2);
+		journal[journalSize++] = a;
+		journal[journalSize++] = b;
+	}
+
+	private void log(int a, int b, int c, int d) {
+		ensureJournal(4);
+		journal[journalSize++] = a;
+		journal[journalSize++] = b;
+		journal[journalSize++] = c;
+		journal[journalSize++] = d;
+	}
+
+	private void log(int a, int b, int c) {
+		ensureJournal(3);
+		journal[journalSize++] = a;
+		journal[journalSize++] = b;
+		journal[journalSize++] = c;
+	}
+
+	private void ensureJournal(int extra) {
+		if (journalSize + extra > journal.length) {
+			journal = Arrays.copyOf(journal, Math.max(journal.length * 2, journalSize + extra));
+		}
+	}
+
+	private void rollback(int mark) {
+		if (journalSize > mark) epoch++;
+		while (journalSize > mark) {
+			int op = journal[--journalSize];
+			switch (op) {
+				case OP_CELL: {
+					int y = journal[--journalSize];
+					int x = journal[--journalSize];
+					rows[y][x] = false;
+					stampCell(x, y);
+					widths[y]--;
+					filledCells--;
+					rowCodes[y] ^= columnKeys[x];
+					break;
+				}
+				case OP_HEIGHT: {
+					int oldHeight = journal[--journalSize];
+					int x = journal[--journalSize];
+					changeHeight(x, oldHeight);
+					break;
+				}
+				case OP_MAX_HEIGHT:
+					maxHeight = journal[--journalSize];
+					break;
+				case OP_CLEAR: {
+					int oldMaxHeight = journal[--journalSize];
+					int count = journal[--journalSize];
+					journalSize -= count;
+					stampRows(journal[journalSize], oldMaxHeight, journal[journalSize]);
+					restoreRows(journalSize, count, oldMaxHeight);
+					maxHeight = oldMaxHeight;
+					break;
+				}
+				case OP_HASH: {
+					long high = journal[--journalSize];
+					long low = journal[--journalSize];
+					hash = (high << 32) | (low & 0xffffffffL);
+					break;
+				}
+				case OP_LAST_MOVE:
+					lastRowsCleared = journal[--journalSize];
+					lastPlaceHeight = journal[--journalSize];
+					lastPlaceY = journal[--journalSize];
+					break;
+				case OP_GARBAGE: {
+					int oldMaxHeight = journal[--journalSize];
+					int holeColumn = journal[--journalSize];
+					int count = journal[--journalSize];
+					stampRows(0, oldMaxHeight + count, -1);
+					removeBottomRows(count, holeColumn, oldMaxHeight);
 					break;
 				}
-				if (j == 0) heights[i] = 0;
+				default:
+					throw new RuntimeException("Corrupt undo journal!");
 			}
-			maxHeight = Math.max(maxHeight, heights[i]);
 		}
 	}
 
+	// Moves the surviving rows back up and refills the cleared (full) rows
+	private void restoreRows(int start, int count, int oldMaxHeight) {
+		filledCells += count * width;
+		for (int i = 0; i < count; i++) spareRows[i] = rows[oldMaxHeight - count + i];
+
+		int fromRow = oldMaxHeight - count - 1;
+		int cleared = count - 1;
+		for (int toRow = oldMaxHeight - 1; cleared >= 0; toRow--) {
+			if (toRow == journal[start + cleared]) {
+				rows[toRow] = spareRows[cleared];
+				Arrays.fill(rows[toRow], true);
+				widths[toRow] = width;
+				rowCodes[toRow] = fullRowCode;
+				spareRows[cleared] = null;
+				cleared--;
+			} else {
+				rows[toRow] = rows[fromRow];
+				widths[toRow] = widths[fromRow];
+				rowCodes[toRow] = rowCodes[fromRow];
+				fromRow--;
+			}
+		}
+	}
+
+	// Inverse of insertRowsAtBottom(): every column went up by count except an empty hole column
+	private void removeBottomRows(int count, int holeColumn, int oldMaxHeight) {
+		for (int i = 0; i < count; i++) spareRows[i] = rows[i];
+		for (int j = 0; j < oldMaxHeight; j++) {
+			rows[j] = rows[j + count];
+			widths[j] = widths[j + count];
+			rowCodes[j] = rowCodes[j + count];
+		}
+		for (int i = 0; i < count; i++) {
+			rows[oldMaxHeight + i] = spareRows[i];
+			Arrays.fill(rows[oldMaxHeight + i], false);
+			widths[oldMaxHeight + i] = 0;
+			rowCodes[oldMaxHeight + i] = 0;
+			spareRows[i] = null;
+		}
+
+		for (int i = 0; i < width; i++) {
+			if (i != holeColumn || heights[i] > 0) changeHeight(i, heights[i] - count);
+		}
+		filledCells -= count * (width - 1);
+		maxHeight = oldMaxHeight;
+	}
+
+	// After the contents were replaced wholesale: nothing left to undo, rows [0, top) are dirty
+	private void forgetHistory(int top) {
+		committed = true;
+		journalSize = 0;
+		undoMark = 0;
+		markCount = 0;
+
+		epoch++;
+		stampRows(0, top, -1);
+		dirtyHeights = true;
+		touchedRows.clear();
+		touchedColumns.clear();
+		verify();
+	}
+
+	// Stamps rows [from, to) and every column reaching above row floor
+	private void stampRows(int from, int to, int floor) {
+		for (int j = from; j < to; j++) rowStamps[j] = epoch;
+		if (from < to) dirtyChunks.set(from / BoardSnapshot.ROWS_PER_CHUNK, (to - 1) / BoardSnapshot.ROWS_PER_CHUNK + 1);
+		for (int i = 0; i < width; i++) {
+			if (heights[i] > floor) columnStamps[i] = epoch;
+		}
+	}
+
+	private void stampCell(int x, int y) {
+		rowStamps[y] = epoch;
+		columnStamps[x] = epoch;
+		dirtyChunks.set(y / BoardSnapshot.ROWS_PER_CHUNK);
+	}
+
+	private void logHash() {
+		log((int)hash, (int)(hash >>> 32), OP_HASH);
+	}
+
+	private void logLastMove() {
+		log(lastPlaceY, lastPlaceHeight, lastRowsCleared, OP_LAST_MOVE);
+	}
+
+	// XORs rows [from, to) into or out of the hash at their current heights
+	private void toggleRows(int from, int to) {
+		for (int j = from; j < to; j++) hash ^= rowCodes[j] * rowKeys[j];
+	}
+
+	// splitmix64 finalizer, so every board of a given size gets the same keys
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private void setHeight(int x, int newHeight) {
+		log(x, heights[x], OP_HEIGHT);
+		changeHeight(x, newHeight);
+		if (verifyMode == VERIFY_INCREMENTAL) touchedColumns.set(x);
+	}
+
+	// Every height change goes through here so the statistics stay in step
+	private void changeHeight(int x, int newHeight) {
+		int from = Math.max(0, x - 1);
+		int to = Math.min(width - 1, x + 1);
+
+		for (int i = from; i <= to; i++) totalWellDepth -= getWellDepth(i);
+		if (x > 0)			bumpiness -= Math.abs(heights[x - 1] - heights[x]);
+		if (x < width - 1)	bumpiness -= Math.abs(heights[x] - heights[x + 1]);
+		totalHeight += newHeight - heights[x];
+
+		heights[x] = newHeight;
+		dirtyHeights = true;
+
+		for (int i = from; i <= to; i++) totalWellDepth += getWellDepth(i);
+		if (x > 0)			bumpiness += Math.abs(heights[x - 1] - heights[x]);
+		if (x < width - 1)	bumpiness += Math.abs(heights[x] - heights[x + 1]);
+	}
+
+	private void checkStatistics() {
+		int totalHeightChecker = 0;
+		int bumpinessChecker = 0;
+		int wellChecker = 0;
+		for (int i = 0; i < width; i++) {
+			totalHeightChecker += heights[i];
+			if (i > 0) bumpinessChecker += Math.abs(heights[i - 1] - heights[i]);
+			wellChecker += getWellDepth(i);
+		}
+		int filledChecker = 0;
+		for (int j = 0; j < maxHeight; j++) filledChecker += widths[j];
+
+		if (totalHeightChecker != totalHeight)	throw new RuntimeException("Incorrect totalHeight!");
+		if (bumpinessChecker != bumpiness)		throw new RuntimeException("Incorrect bumpiness!");
+		if (wellChecker != totalWellDepth)		throw new RuntimeException("Incorrect wells!");
+		if (filledChecker != filledCells)		throw new RuntimeException("Incorrect holes!");
+	}
+
+	private void touch(int x, int y) {
+		if (verifyMode == VERIFY_INCREMENTAL) {
+			touchedRows.set(y);
+			touchedColumns.set(x);
+		}
+	}
+
+	private void verify() {
+		switch (verifyMode) {
+			case VERIFY_OFF:
+				break;
+			case VERIFY_SAMPLED:
+				if (++verifyCount >= verifyInterval) {
+					verifyCount = 0;
+					sanityCheck();
+				}
+				break;
+			case VERIFY_INCREMENTAL:
+				verifyTouched();
+				break;
+			default:
+				sanityCheck();
+		}
+	}
+
+	// Recounts the touched rows and re-finds the top of the touched columns
+	private void verifyTouched() {
+		for (int j = touchedRows.nextSetBit(0); j >= 0; j = touchedRows.nextSetBit(j + 1)) {
+			int rowWidth = 0;
+			for (int i = 0; i < width; i++) {
+				if (isFilled(i, j)) rowWidth++;
+			}
+			if (rowWidth != widths[j]) throw new RuntimeException("Incorrect widths!");
+		}
+
+		int maxHeightChecker = 0;
+		for (int i = 0; i < width; i++) maxHeightChecker = Math.max(maxHeightChecker, heights[i]);
+		if (maxHeightChecker != maxHeight) throw new RuntimeException("Incorrect maxHeight!");
+		if (maxHeight < height && widths[maxHeight] != 0) throw new RuntimeException("Incorrect maxHeight!");
+
+		for (int i = touchedColumns.nextSetBit(0); i >= 0; i = touchedColumns.nextSetBit(i + 1)) {
+			int j = maxHeight;
+			while (j > 0 && !isFilled(i, j - 1)) j--;
+			if (j != heights[i]) throw new RuntimeException("Incorrect heights!");
+		}
+
+		checkStatistics();
+		touchedRows.clear();
+		touchedColumns.clear();
+	}
+
+	private static int parseVerifyMode(String mode) {
+		switch (mode.trim().toLowerCase()) {
+			case "off":			return VERIFY_OFF;
+			case "sampled":		return VERIFY_SAMPLED;
+			case "incremental":	return VERIFY_INCREMENTAL;
+			case "full":		return VERIFY_FULL;
+			default:			throw new RuntimeException("Unknown verify mode: " + mode);
+		}
+	}
+
+	/*
+	 After a clear each column drops by the number of cleared rows below its
+	 old top. Only a column whose top cell was itself cleared has to look
+	 further down for its new top, and that walk stops at the first cell.
+	*/
+	private void updateHeights(int start, int count) {
+		int firstCleared = journal[start];
+		maxHeight = 0;
+		for (int i = 0; i < width; i++) {
+			int columnHeight = heights[i];
+			if (columnHeight > firstCleared) {
+				int below = 0;
+				while (below < count && journal[start + below] < columnHeight) below++;
+				columnHeight -= below;
+				while (columnHeight > 0 && !isFilled(i, columnHeight - 1)) columnHeight--;
+				setHeight(i, columnHeight);
+			}
+			maxHeight = Math.max(maxHeight, columnHeight);
+		}
+	}
+
+	// Whether (col, row) -- in post-clear coordinates -- would be filled after the previewed placement
+	private boolean previewFilled(Piece piece, int x, int y, int[] clearedRows, int rowsCleared, int col, int row) {
+		for (int k = 0; k < rowsCleared && clearedRows[k] <= row; k++) row++;
+		if (isFilled(col, row)) return true;
+		for (TPoint tp : piece.getBody()) {
+			if (tp.x + x == col && tp.y + y == row) return true;
+		}
+		return false;
+	}
+
 	private boolean inBounds(int x, int y) {
 		return (x >= 0 && x < width && y >= 0 && y < height);
 	}
 
 	private boolean isFilled(int x, int y) {
-		return grid[x][y];
+		return rows[y][x];
 	}
 
 }
@@ -0,0 +1,192 @@
+import java.nio.*;
+
+/*
+ Many boards of one size packed contiguously off-heap for batch simulation.
+ Board b's rows are the longs [b * height, (b + 1) * height) of one direct
+ buffer, one bit per cell (so widths up to 64), its column heights are the
+ ints [b * width, (b + 1) * width) of a second buffer, and its maxHeight is
+ int b of a third. There are no per-board objects, so walking boards in
+ index order streams through memory.
+
+ The operations mirror Board's by board index. There is no undo: place()
+ checks the whole piece first and leaves the board alone if it does not fit.
+*/
+public class BoardArena {
+
+	private final int width;
+	private final int height;
+	private final int count;
+	private final long fullRow;
+
+	private final LongBuffer rows;
+	private final IntBuffer heights;
+	private final IntBuffer maxHeights;
+
+	public BoardArena(int count, int width, int height) {
+		if (width > BitBoard.MAX_WIDTH) throw new RuntimeException("BoardArena supports widths up to " + BitBoard.MAX_WIDTH + "!");
+
+		this.width = width;
+		this.height = height;
+		this.count = count;
+		fullRow = (width == BitBoard.MAX_WIDTH) ? -1L : (1L << width) - 1;
+
+		int rowBytes = bufferBytes(count, height, Long.BYTES);
+		int heightBytes = bufferBytes(count, width, Integer.BYTES);
+		int maxHeightBytes = bufferBytes(count, 1, Integer.BYTES);
+		rows = ByteBuffer.allocateDirect(rowBytes).order(ByteOrder.nativeOrder()).asLongBuffer();
+		heights = ByteBuffer.allocateDirect(heightBytes).order(ByteOrder.nativeOrder()).asIntBuffer();
+		maxHeights = ByteBuffer.allocateDirect(maxHeightBytes).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	// count * per * bytes, which one direct buffer must be able to hold
+	private static int bufferBytes(int count, int per, int bytes) {
+		if (count < 0 || per < 0) throw new RuntimeException("Negative arena size!");
+		try {
+			return Math.toIntExact(Math.multiplyExact(Math.multiplyExact((long)count, per), bytes));
+		} catch (ArithmeticException e) {
+			throw new RuntimeException("Too many boards for one arena!");
+		}
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getMaxHeight(int board) {
+		return maxHeights.get(board);
+	}
+
+	public int getColumnHeight(int board, int x) {
+		return heights.get(board * width + x);
+	}
+
+	public int getRowWidth(int board, int y) {
+		return Long.bitCount(rows.get(board * height + y));
+	}
+
+	public boolean getGrid(int board, int x, int y) {
+		return (!inBounds(x, y) || ((rows.get(board * height + y) >>> x) & 1L) != 0);
+	}
+
+	public int dropHeight(int board, Piece piece, int x) {
+		int base = board * width + x;
+		int[] skirt = piece.getSkirt();
+		int dropY = 0;
+		for (int i = 0; i < skirt.length; i++) {
+			dropY = Math.max(dropY, heights.get(base + i) - skirt[i]);
+		}
+		return dropY;
+	}
+
+	// Same status codes as Board.place(); the board is unchanged unless the piece fits
+	public int place(int board, Piece piece, int x, int y) {
+		int rowBase = board * height;
+		for (TPoint tp : piece.getBody()) {
+			int placeX = tp.x + x;
+			int placeY = tp.y + y;
+			if (!inBounds(placeX, placeY)) return Board.PLACE_OUT_BOUNDS;
+			if (((rows.get(rowBase + placeY) >>> placeX) & 1L) != 0) return Board.PLACE_BAD;
+		}
+
+		int status = Board.PLACE_OK;
+		int heightBase = board * width;
+		int maxHeight = maxHeights.get(board);
+		for (TPoint tp : piece.getBody()) {
+			int placeX = tp.x + x;
+			int placeY = tp.y + y;
+			long row = rows.get(rowBase + placeY) | (1L << placeX);
+			rows.put(rowBase + placeY, row);
+			if (row == fullRow) status = Board.PLACE_ROW_FILLED;
+
+			if (heights.get(heightBase + placeX) <= placeY) heights.put(heightBase + placeX, placeY + 1);
+			maxHeight = Math.max(maxHeight, placeY + 1);
+		}
+		maxHeights.put(board, maxHeight);
+		return status;
+	}
+
+	public int clearRows(int board) {
+		int rowBase = board * height;
+		int maxHeight = maxHeights.get(board);
+
+		int rowsCleared = 0;
+		int toRow = 0;
+		for (int fromRow = 0; fromRow < maxHeight; fromRow++) {
+			long row = rows.get(rowBase + fromRow);
+			if (row == fullRow) {
+				rowsCleared++;
+			} else {
+				if (rowsCleared > 0) rows.put(rowBase + toRow, row);
+				toRow++;
+			}
+		}
+		if (rowsCleared == 0) return 0;
+
+		for (int j = toRow; j < maxHeight; j++) rows.put(rowBase + j, 0L);
+
+		// Walk down from the top, giving each column the first row it shows up in
+		int heightBase = board * width;
+		for (int i = 0; i < width; i++) heights.put(heightBase + i, 0);
+		int newMaxHeight = 0;
+		long seen = 0;
+		for (int j = toRow - 1; j >= 0 && seen != fullRow; j--) {
+			long row = rows.get(rowBase + j);
+			if (row != 0 && newMaxHeight == 0) newMaxHeight = j + 1;
+			long fresh = row & ~seen;
+			while (fresh != 0) {
+				heights.put(heightBase + Long.numberOfTrailingZeros(fresh), j + 1);
+				fresh &= fresh - 1;
+			}
+			seen |= row;
+		}
+		maxHeights.put(board, newMaxHeight);
+		return rowsCleared;
+	}
+
+	public void reset(int board) {
+		int rowBase = board * height;
+		int maxHeight = maxHeights.get(board);
+		for (int j = 0; j < maxHeight; j++) rows.put(rowBase + j, 0L);
+		int heightBase = board * width;
+		for (int i = 0; i < width; i++) heights.put(heightBase + i, 0);
+		maxHeights.put(board, 0);
+	}
+
+	public void copy(int from, int to) {
+		if (from == to) return;
+		int top = Math.max(maxHeights.get(from), maxHeights.get(to));
+		for (int j = 0; j < top; j++) rows.put(to * height + j, rows.get(from * height + j));
+		for (int i = 0; i < width; i++) heights.put(to * width + i, heights.get(from * width + i));
+		maxHeights.put(to, maxHeights.get(from));
+	}
+
+	// Loads the contents of a Board the same size as the arena's boards
+	public void load(int board, Board source) {
+		if (source.getWidth() != width || source.getHeight() != height) throw new RuntimeException("load() needs a board of the arena's size!");
+
+		reset(board);
+		int rowBase = board * height;
+		for (int j = 0; j < source.getMaxHeight(); j++) {
+			long row = 0;
+			for (int i = 0; i < width; i++) {
+				if (source.getGrid(i, j)) row |= 1L << i;
+			}
+			rows.put(rowBase + j, row);
+		}
+		for (int i = 0; i < width; i++) heights.put(board * width + i, source.getColumnHeight(i));
+		maxHeights.put(board, source.getMaxHeight());
+	}
+
+	private boolean inBounds(int x, int y) {
+		return (x >= 0 && x < width && y >= 0 && y < height);
+	}
+
+}
@@ -0,0 +1,96 @@
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoardArenaTest {
+
+	private BoardArena arena;
+
+	private Piece stick;
+	private Piece square;
+	private Piece pyramid;
+
+	@BeforeEach
+	protected void setUp() {
+		arena = new BoardArena(3, 6, 8);
+
+		stick = new Piece(Piece.STICK_STR);
+		square = new Piece(Piece.SQUARE_STR);
+		pyramid = new Piece(Piece.PYRAMID_STR);
+	}
+
+	@Test
+	public void placeAndClearTest() {
+		assertEquals(Board.PLACE_OK, arena.place(1, stick, 0, 0));
+		assertEquals(Board.PLACE_OK, arena.place(1, square, 1, 0));
+		assertEquals(Board.PLACE_ROW_FILLED, arena.place(1, pyramid, 3, 0));
+		assertEquals(Board.PLACE_OUT_BOUNDS, arena.place(1, stick, 0, 5));
+		assertEquals(Board.PLACE_BAD, arena.place(1, square, 3, 1));
+
+		assertEquals(0, arena.getMaxHeight(0));
+		assertEquals(0, arena.getMaxHeight(2));
+		assertEquals(4, arena.getMaxHeight(1));
+		assertEquals(2, arena.getColumnHeight(1, 4));
+		assertEquals(6, arena.getRowWidth(1, 0));
+		assertEquals(4, arena.dropHeight(1, square, 0));
+
+		assertEquals(1, arena.clearRows(1));
+		assertEquals(3, arena.getMaxHeight(1));
+		assertEquals(1, arena.getColumnHeight(1, 4));
+		assertEquals(0, arena.getColumnHeight(1, 3));
+		assertTrue(arena.getGrid(1, 0, 2));
+		assertFalse(arena.getGrid(1, 0, 3));
+
+		arena.copy(1, 2);
+		assertEquals(3, arena.getMaxHeight(2));
+		arena.reset(1);
+		assertEquals(0, arena.getMaxHeight(1));
+		assertFalse(arena.getGrid(1, 0, 0));
+		assertTrue(arena.getGrid(2, 0, 0));
+	}
+
+	@Test
+	public void matchesBoardTest() {
+		BoardArena big = new BoardArena(4, 10, 24);
+		Board[] expected = new Board[4];
+		for (int b = 0; b < 4; b++) expected[b] = new Board(10, 24);
+		Piece[] pieces = Piece.getPieces();
+		Random random = new Random(108);
+
+		for (int i = 0; i < 2000; i++) {
+			int b = random.nextInt(4);
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			int x = random.nextInt(10 - piece.getWidth() + 1);
+			int y = expected[b].dropHeight(piece, x);
+			assertEquals(y, big.dropHeight(b, piece, x));
+			if (y + piece.getHeight() > 24) {
+				expected[b].reset();
+				big.reset(b);
+				continue;
+			}
+
+			assertEquals(expected[b].place(piece, x, y), big.place(b, piece, x, y));
+			assertEquals(expected[b].clearRows(), big.clearRows(b));
+			expected[b].commit();
+
+			assertEquals(expected[b].getMaxHeight(), big.getMaxHeight(b));
+			for (int col = 0; col < 10; col++) assertEquals(expected[b].getColumnHeight(col), big.getColumnHeight(b, col));
+			for (int row = 0; row < 24; row++) assertEquals(expected[b].getRowWidth(row), big.getRowWidth(b, row));
+		}
+
+		big.load(0, expected[3]);
+		for (int row = 0; row < 24; row++) assertEquals(expected[3].getRowWidth(row), big.getRowWidth(0, row));
+	}
+
+	@Test
+	public void sizeOverflowTest() {
+		// count * height wraps to 0 in int arithmetic
+		assertThrows(RuntimeException.class, () -> new BoardArena(1 << 20, 8, 1 << 12));
+		assertThrows(RuntimeException.class, () -> new BoardArena(1 << 28, 1, 1));
+		// the rows fit, the column heights do not
+		assertThrows(RuntimeException.class, () -> new BoardArena(1 << 23, 64, 1));
+		assertThrows(RuntimeException.class, () -> new BoardArena(-1, 6, 8));
+	}
+
+}
@@ -0,0 +1,175 @@
+import java.io.*;
+import java.nio.*;
+
+/*
+ Compact binary encoding of a Board's cells, for datasets and checkpoints.
+
+ Record layout (big-endian, as DataOutput writes it):
+	byte	VERSION
+	ushort	width
+	ushort	height
+	ushort	rows -- the board's maxHeight; everything above is empty
+	rows * ceil(width / 8) bytes, bottom row first, column x in bit (x % 8)
+	of byte (x / 8)
+
+ Records are self-contained, so a file of them can be streamed one at a time
+ through a DataInputStream or a ByteBuffer; both encoders share one header
+ routine. Decoding rebuilds widths, heights and maxHeight while it unpacks
+ the bits instead of rescanning the board.
+*/
+public class BoardCodec {
+
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 7;
+
+	public static int encodedSize(Board board) {
+		return HEADER_BYTES + board.getMaxHeight() * bytesPerRow(board.getWidth());
+	}
+
+	public static void write(Board board, DataOutput out) throws IOException {
+		out.write(header(board));
+		byte[] row = new byte[bytesPerRow(board.getWidth())];
+		for (int y = 0; y < board.getMaxHeight(); y++) {
+			encodeRow(board, y, row);
+			out.write(row);
+		}
+	}
+
+	public static void write(Board board, ByteBuffer out) {
+		out.put(header(board));
+		byte[] row = new byte[bytesPerRow(board.getWidth())];
+		for (int y = 0; y < board.getMaxHeight(); y++) {
+			encodeRow(board, y, row);
+			out.put(row);
+		}
+	}
+
+	public static Board read(DataInput in) throws IOException {
+		return read(in, null);
+	}
+
+	/*
+	 Reads one record into reuse if it has the record's size (it is reset
+	 first), otherwise into a new Board, and returns the board used. The
+	 whole record is read and checked before reuse is touched, so a
+	 truncated or corrupt record leaves it as it was.
+	*/
+	public static Board read(DataInput in, Board reuse) throws IOException {
+		byte[] header = new byte[HEADER_BYTES];
+		in.readFully(header);
+		int[] fields = parseHeader(header);
+		String problem = checkHeader(fields);
+		if (problem != null) throw new IOException(problem);
+
+		byte[] cells = new byte[fields[ROWS] * bytesPerRow(fields[WIDTH])];
+		in.readFully(cells);
+		problem = checkCells(cells, fields[WIDTH]);
+		if (problem != null) throw new IOException(problem);
+		return load(cells, fields, reuse);
+	}
+
+	public static Board read(ByteBuffer in) {
+		return read(in, null);
+	}
+
+	public static Board read(ByteBuffer in, Board reuse) {
+		byte[] header = new byte[HEADER_BYTES];
+		in.get(header);
+		int[] fields = parseHeader(header);
+		String problem = checkHeader(fields);
+		if (problem != null) throw new RuntimeException(problem);
+
+		byte[] cells = new byte[fields[ROWS] * bytesPerRow(fields[WIDTH])];
+		in.get(cells);
+		problem = checkCells(cells, fields[WIDTH]);
+		if (problem != null) throw new RuntimeException(problem);
+		return load(cells, fields, reuse);
+	}
+
+	// Header fields, as parseHeader() returns them
+	private static final int VERSION_FIELD = 0;
+	private static final int WIDTH = 1;
+	private static final int HEIGHT = 2;
+	private static final int ROWS = 3;
+
+	// The one place the header layout is written; reads go through parseHeader()
+	private static byte[] header(Board board) {
+		checkSize(board);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.put((byte)VERSION);
+		header.putShort((short)board.getWidth());
+		header.putShort((short)board.getHeight());
+		header.putShort((short)board.getMaxHeight());
+		return header.array();
+	}
+
+	private static int[] parseHeader(byte[] header) {
+		ByteBuffer in = ByteBuffer.wrap(header);
+		int[] fields = new int[4];
+		fields[VERSION_FIELD] = in.get() & 0xff;
+		fields[WIDTH] = in.getShort() & 0xffff;
+		fields[HEIGHT] = in.getShort() & 0xffff;
+		fields[ROWS] = in.getShort() & 0xffff;
+		return fields;
+	}
+
+	// What is wrong with the header, or null if nothing is
+	private static String checkHeader(int[] fields) {
+		if (fields[VERSION_FIELD] != VERSION) return "Unsupported board format version: " + fields[VERSION_FIELD];
+		if (fields[ROWS] > fields[HEIGHT]) return "Corrupt board record: " + fields[ROWS] + " rows on a board " + fields[HEIGHT] + " high";
+		return null;
+	}
+
+	// What is wrong with the cells, or null if nothing is: no row may fill the unused high bits of its last byte
+	private static String checkCells(byte[] cells, int width) {
+		int rowBytes = bytesPerRow(width);
+		int padding = paddingMask(width);
+		for (int y = 0; y * rowBytes < cells.length; y++) {
+			if ((cells[(y + 1) * rowBytes - 1] & padding) != 0) return "Corrupt board record: cells past column " + width + " in row " + y;
+		}
+		return null;
+	}
+
+	private static Board load(byte[] cells, int[] fields, Board reuse) {
+		Board board = prepare(reuse, fields[WIDTH], fields[HEIGHT]);
+		int rowBytes = bytesPerRow(fields[WIDTH]);
+		for (int y = 0; y < fields[ROWS]; y++) {
+			for (int k = 0; k < rowBytes; k++) {
+				board.loadBits(y, k >>> 3, (cells[y * rowBytes + k] & 0xffL) << ((k & 7) * 8));
+			}
+		}
+		board.endLoad();
+		return board;
+	}
+
+	private static void encodeRow(Board board, int y, byte[] row) {
+		long bits = 0;
+		for (int k = 0; k < row.length; k++) {
+			if ((k & 7) == 0) bits = board.getRowBits(y, k >>> 3);
+			row[k] = (byte)(bits >>> ((k & 7) * 8));
+		}
+	}
+
+	private static void checkSize(Board board) {
+		if (board.getWidth() > 0xffff || board.getHeight() > 0xffff) throw new RuntimeException("Board too large to encode!");
+	}
+
+	private static Board prepare(Board reuse, int width, int height) {
+		if (reuse != null && reuse.getWidth() == width && reuse.getHeight() == height) {
+			reuse.reset();
+			return reuse;
+		}
+		return new Board(width, height);
+	}
+
+	private static int bytesPerRow(int width) {
+		return (width + 7) / 8;
+	}
+
+	// The unused high bits of a row's last byte, which must be clear
+	private static int paddingMask(int width) {
+		int used = width % 8;
+		return (used == 0) ? 0 : (0xff << used) & 0xff;
+	}
+
+}
@@ -0,0 +1,104 @@
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoardCodecTest {
+
+	private Board board;
+
+	@BeforeEach
+	protected void setUp() {
+		board = new Board(10, 24);
+		Piece[] pieces = Piece.getPieces();
+		Random random = new Random(108);
+		for (int i = 0; i < 30; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			int x = random.nextInt(board.getWidth() - piece.getWidth() + 1);
+			board.place(piece, x, board.dropHeight(piece, x));
+			board.clearRows();
+			board.commit();
+		}
+	}
+
+	@Test
+	public void dataStreamTest() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		BoardCodec.write(board, out);
+		BoardCodec.write(new Board(3, 5), out);
+		assertEquals(BoardCodec.encodedSize(board) + BoardCodec.HEADER_BYTES, bytes.size());
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(board.toString(), BoardCodec.read(in).toString());
+		Board second = BoardCodec.read(in, board);
+		assertNotSame(board, second);
+		assertEquals(3, second.getWidth());
+		assertEquals(0, second.getMaxHeight());
+		assertEquals(-1, in.read());
+
+		in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		Board reused = new Board(10, 24);
+		assertSame(reused, BoardCodec.read(in, reused));
+		assertEquals(board.toString(), reused.toString());
+		assertEquals(board.getHash(), reused.getHash());
+		assertEquals(board.getHoles(), reused.getHoles());
+		assertEquals(board.getBumpiness(), reused.getBumpiness());
+		reused.sanityCheck();
+	}
+
+	@Test
+	public void byteBufferTest() {
+		ByteBuffer buffer = ByteBuffer.allocate(BoardCodec.encodedSize(board));
+		BoardCodec.write(board, buffer);
+		assertFalse(buffer.hasRemaining());
+
+		buffer.flip();
+		Board copy = BoardCodec.read(buffer);
+		assertEquals(board.toString(), copy.toString());
+		for (int x = 0; x < board.getWidth(); x++) {
+			assertEquals(board.getColumnHeight(x), copy.getColumnHeight(x));
+		}
+		assertEquals(board.getMaxHeight(), copy.getMaxHeight());
+
+		buffer.put(0, (byte)99);
+		buffer.rewind();
+		assertThrows(RuntimeException.class, () -> BoardCodec.read(buffer));
+	}
+
+	@Test
+	public void truncatedRecordTest() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BoardCodec.write(board, new DataOutputStream(bytes));
+		byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 3);
+
+		// A failed read leaves the board it was given as it was
+		Board reused = new Board(board);
+		reused.setVerifyMode(Board.VERIFY_FULL);
+		assertThrows(EOFException.class, () -> BoardCodec.read(new DataInputStream(new ByteArrayInputStream(truncated)), reused));
+		assertThrows(BufferUnderflowException.class, () -> BoardCodec.read(ByteBuffer.wrap(truncated), reused));
+		assertEquals(board.toString(), reused.toString());
+		assertEquals(board.getMaxHeight(), reused.getMaxHeight());
+		assertEquals(board.getHash(), reused.getHash());
+		reused.sanityCheck();
+		reused.reset();
+	}
+
+	@Test
+	public void paddingBitsTest() {
+		// Width 10 leaves the top 6 bits of each row's second byte unused
+		ByteBuffer buffer = ByteBuffer.allocate(BoardCodec.encodedSize(board));
+		BoardCodec.write(board, buffer);
+		byte[] bytes = buffer.array();
+		bytes[BoardCodec.HEADER_BYTES + 1] |= (byte)0x80;
+
+		Board reused = new Board(board);
+		IOException e = assertThrows(IOException.class, () -> BoardCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)), reused));
+		assertTrue(e.getMessage().startsWith("Corrupt board record"));
+		assertThrows(RuntimeException.class, () -> BoardCodec.read(ByteBuffer.wrap(bytes), reused));
+		assertEquals(board.toString(), reused.toString());
+	}
+
+}
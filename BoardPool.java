@@ -0,0 +1,60 @@
+import java.util.*;
+
+/*
+ Hands out empty Boards of one size and takes them back for reuse, so
+ search and simulation workers stop allocating a board per game or node.
+ Each thread gets its own free list, so acquire() and release() need no
+ locking; a board should be released by the thread that acquired it.
+*/
+public class BoardPool {
+
+	private final int width;
+	private final int height;
+	private final int maxIdle;
+
+	private final ThreadLocal<ArrayDeque<Board>> free = ThreadLocal.withInitial(ArrayDeque::new);
+
+	public BoardPool(int width, int height) {
+		this(width, height, 64);
+	}
+
+	public BoardPool(int width, int height, int maxIdle) {
+		this.width = width;
+		this.height = height;
+		this.maxIdle = maxIdle;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	// Returns an empty, committed board
+	public Board acquire() {
+		Board board = free.get().pollFirst();
+		if (board == null) board = new Board(width, height);
+		return board;
+	}
+
+	// Returns a committed copy of source
+	public Board acquireCopy(Board source) {
+		Board board = free.get().pollFirst();
+		if (board == null) return new Board(source);
+		board.copyFrom(source);
+		return board;
+	}
+
+	public void release(Board board) {
+		if (board.getWidth() != width || board.getHeight() != height) throw new RuntimeException("Board does not belong to this pool!");
+
+		ArrayDeque<Board> boards = free.get();
+		if (boards.size() < maxIdle) {
+			board.reset();
+			boards.addFirst(board);
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoardPoolTest {
+
+	private Piece stick;
+	private Piece square;
+
+	@BeforeEach
+	protected void setUp() {
+		stick = new Piece(Piece.STICK_STR);
+		square = new Piece(Piece.SQUARE_STR);
+	}
+
+	@Test
+	public void acquireReleaseTest() {
+		BoardPool pool = new BoardPool(6, 8);
+		Board first = pool.acquire();
+		first.place(stick, 0, 0);
+		pool.release(first);
+
+		Board second = pool.acquire();
+		assertSame(first, second);
+		assertEquals(0, second.getMaxHeight());
+		assertEquals(0, second.getHash());
+		second.place(square, 0, 0);
+		second.commit();
+
+		Board third = pool.acquireCopy(second);
+		assertNotSame(second, third);
+		assertEquals(second.toString(), third.toString());
+		pool.release(third);
+		pool.release(second);
+
+		assertThrows(RuntimeException.class, () -> pool.release(new Board(6, 9)));
+	}
+
+}
@@ -0,0 +1,202 @@
+import java.util.*;
+
+/*
+ An immutable board position. Rows are packed into bit words and grouped
+ into chunks of ROWS_PER_CHUNK rows; a new snapshot only copies the chunks
+ it changes and shares the rest (and the heights array, when no column
+ moved) with the snapshot it came from. That keeps thousands of search or
+ replay positions alive for little more than the rows they differ in.
+
+ Board.snapshot() makes one, Board.restore() loads one back into a Board.
+*/
+public final class BoardSnapshot {
+
+	static final int ROWS_PER_CHUNK = 8;
+
+	private final int width;
+	private final int height;
+	private final int words;
+
+	private final long[][] chunks;
+	private final int[] heights;
+	private final int maxHeight;
+
+	BoardSnapshot(int width, int height, long[][] chunks, int[] heights, int maxHeight) {
+		this.width = width;
+		this.height = height;
+		this.words = wordsPerRow(width);
+		this.chunks = chunks;
+		this.heights = heights;
+		this.maxHeight = maxHeight;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getMaxHeight() {
+		return maxHeight;
+	}
+
+	public int getColumnHeight(int x) {
+		return heights[x];
+	}
+
+	public int getRowWidth(int y) {
+		if (y >= maxHeight) return 0;
+		long[] chunk = chunks[y / ROWS_PER_CHUNK];
+		int start = (y % ROWS_PER_CHUNK) * words;
+		int rowWidth = 0;
+		for (int w = 0; w < words; w++) rowWidth += Long.bitCount(chunk[start + w]);
+		return rowWidth;
+	}
+
+	public boolean getGrid(int x, int y) {
+		return (!inBounds(x, y) || isFilled(x, y));
+	}
+
+	public int dropHeight(Piece piece, int x) {
+		int dropY = 0;
+		int[] skirt = piece.getSkirt();
+		for (int i = 0; i < piece.getWidth(); i++) {
+			dropY = Math.max(dropY, heights[x + i] - skirt[i]);
+		}
+		return dropY;
+	}
+
+	/*
+	 Returns the snapshot with the piece added, copying only the chunks
+	 holding the rows it lands in, or null if the piece would go out of
+	 bounds or overlap a filled cell. Full rows are left in place;
+	 follow with clearRows().
+	*/
+	public BoardSnapshot place(Piece piece, int x, int y) {
+		for (TPoint tp : piece.getBody()) {
+			int placeX = tp.x + x;
+			int placeY = tp.y + y;
+			if (!inBounds(placeX, placeY) || isFilled(placeX, placeY)) return null;
+		}
+
+		int newMaxHeight = maxHeight;
+		int[] newHeights = heights.clone();
+		for (TPoint tp : piece.getBody()) {
+			newHeights[tp.x + x] = Math.max(newHeights[tp.x + x], tp.y + y + 1);
+			newMaxHeight = Math.max(newMaxHeight, newHeights[tp.x + x]);
+		}
+
+		long[][] newChunks = Arrays.copyOf(chunks, chunkCount(newMaxHeight));
+		boolean[] copied = new boolean[newChunks.length];
+		for (TPoint tp : piece.getBody()) {
+			int placeX = tp.x + x;
+			int placeY = tp.y + y;
+			int c = placeY / ROWS_PER_CHUNK;
+			if (!copied[c]) {
+				newChunks[c] = (newChunks[c] == null) ? new long[ROWS_PER_CHUNK * words] : newChunks[c].clone();
+				copied[c] = true;
+			}
+			newChunks[c][(placeY % ROWS_PER_CHUNK) * words + (placeX >>> 6)] |= 1L << placeX;
+		}
+
+		return new BoardSnapshot(width, height, newChunks, newHeights, newMaxHeight);
+	}
+
+	/*
+	 Returns the snapshot with its full rows removed, or this snapshot if
+	 there are none. Chunks below the first full row are shared.
+	*/
+	public BoardSnapshot clearRows() {
+		int firstFull = 0;
+		while (firstFull < maxHeight && getRowWidth(firstFull) < width) firstFull++;
+		if (firstFull == maxHeight) return this;
+
+		long[][] newChunks = Arrays.copyOf(chunks, chunks.length);
+		int firstChunk = firstFull / ROWS_PER_CHUNK;
+		for (int c = firstChunk; c < newChunks.length; c++) {
+			newChunks[c] = Arrays.copyOf(chunks[c], ROWS_PER_CHUNK * words);
+		}
+
+		int[] cleared = new int[maxHeight - firstFull];
+		int clearedCount = 0;
+		int toRow = firstFull;
+		for (int fromRow = firstFull; fromRow < maxHeight; fromRow++) {
+			if (getRowWidth(fromRow) == width) {
+				cleared[clearedCount++] = fromRow;
+			} else {
+				copyRow(chunks, fromRow, newChunks, toRow++);
+			}
+		}
+		for (int j = toRow; j < maxHeight; j++) {
+			Arrays.fill(newChunks[j / ROWS_PER_CHUNK], (j % ROWS_PER_CHUNK) * words, (j % ROWS_PER_CHUNK + 1) * words, 0L);
+		}
+
+		// Same fix-up as Board: drop by the cleared rows below, then walk down if the top was cleared
+		int[] newHeights = heights.clone();
+		int newMaxHeight = 0;
+		BoardSnapshot result = new BoardSnapshot(width, height, newChunks, newHeights, maxHeight);
+		for (int i = 0; i < width; i++) {
+			int columnHeight = newHeights[i];
+			if (columnHeight > firstFull) {
+				int below = 0;
+				while (below < clearedCount && cleared[below] < columnHeight) below++;
+				columnHeight -= below;
+				while (columnHeight > 0 && !result.isFilled(i, columnHeight - 1)) columnHeight--;
+				newHeights[i] = columnHeight;
+			}
+			newMaxHeight = Math.max(newMaxHeight, columnHeight);
+		}
+
+		return new BoardSnapshot(width, height, Arrays.copyOf(newChunks, chunkCount(newMaxHeight)), newHeights, newMaxHeight);
+	}
+
+	public String toString() {
+		StringBuilder buff = new StringBuilder();
+		for (int y = height - 1; y >= 0; y--) {
+			buff.append('|');
+			for (int x = 0; x < width; x++) {
+				if (getGrid(x,y)) {
+					buff.append('+');
+				} else {
+					buff.append(' ');
+				}
+			}
+			buff.append("|\n");
+		}
+		for (int x = 0; x < width + 2; x++) buff.append('-');
+		return buff.toString();
+	}
+
+	long[][] getChunks() {
+		return chunks;
+	}
+
+	int[] getHeights() {
+		return heights;
+	}
+
+	static int wordsPerRow(int width) {
+		return (width + 63) >>> 6;
+	}
+
+	static int chunkCount(int maxHeight) {
+		return (maxHeight + ROWS_PER_CHUNK - 1) / ROWS_PER_CHUNK;
+	}
+
+	private void copyRow(long[][] from, int fromRow, long[][] to, int toRow) {
+		System.arraycopy(from[fromRow / ROWS_PER_CHUNK], (fromRow % ROWS_PER_CHUNK) * words,
+				to[toRow / ROWS_PER_CHUNK], (toRow % ROWS_PER_CHUNK) * words, words);
+	}
+
+	private boolean isFilled(int x, int y) {
+		if (y >= maxHeight) return false;
+		return ((chunks[y / ROWS_PER_CHUNK][(y % ROWS_PER_CHUNK) * words + (x >>> 6)] >>> x) & 1L) != 0;
+	}
+
+	private boolean inBounds(int x, int y) {
+		return (x >= 0 && x < width && y >= 0 && y < height);
+	}
+
+}
@@ -0,0 +1,110 @@
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoardSnapshotTest {
+
+	private Board board;
+
+	private Piece stick;
+	private Piece square;
+	private Piece pyramid;
+
+	@BeforeEach
+	protected void setUp() {
+		board = new Board(6, 20);
+
+		stick = new Piece(Piece.STICK_STR);
+		square = new Piece(Piece.SQUARE_STR);
+		pyramid = new Piece(Piece.PYRAMID_STR);
+	}
+
+	@Test
+	public void snapshotTest() {
+		board.place(stick, 0, 0);
+		board.commit();
+		BoardSnapshot first = board.snapshot();
+		assertSame(first, board.snapshot());
+		assertEquals(board.toString(), first.toString());
+		assertEquals(4, first.getMaxHeight());
+		assertEquals(4, first.getColumnHeight(0));
+		assertEquals(1, first.getRowWidth(3));
+
+		board.place(square, 4, 10);
+		board.commit();
+		BoardSnapshot second = board.snapshot();
+		assertSame(first.getChunks()[0], second.getChunks()[0]);
+		assertEquals(board.toString(), second.toString());
+		assertEquals(4, first.getMaxHeight());
+		assertFalse(first.getGrid(4, 10));
+		assertTrue(second.getGrid(4, 10));
+
+		// An undone placement dirties only the chunk it was in
+		board.place(square, 0, 8);
+		board.undo();
+		BoardSnapshot third = board.snapshot();
+		assertSame(second.getChunks()[0], third.getChunks()[0]);
+		assertNotSame(second.getChunks()[1], third.getChunks()[1]);
+		assertEquals(board.toString(), third.toString());
+	}
+
+	@Test
+	public void placeTest() {
+		board.place(stick, 0, 0);
+		board.commit();
+		BoardSnapshot before = board.snapshot();
+
+		BoardSnapshot after = before.place(square, 1, 0);
+		assertNotSame(before, after);
+		assertEquals(0, before.getColumnHeight(1));
+		assertEquals(2, after.getColumnHeight(1));
+		assertEquals(3, after.getRowWidth(1));
+
+		assertNull(after.place(square, 1, 1));
+		assertNull(after.place(stick, 5, 17));
+		assertSame(after, after.clearRows());
+
+		BoardSnapshot full = after.place(square, 3, 0).place(stick, 5, 0);
+		BoardSnapshot cleared = full.clearRows();
+		assertEquals(2, cleared.getMaxHeight());
+		assertEquals(2, cleared.getColumnHeight(0));
+		assertEquals(0, cleared.getColumnHeight(1));
+		assertEquals(2, cleared.getColumnHeight(5));
+		assertEquals(2, cleared.getRowWidth(0));
+	}
+
+	@Test
+	public void restoreTest() {
+		Piece[] pieces = Piece.getPieces();
+		Random random = new Random(108);
+		Board replay = new Board(6, 20);
+		BoardSnapshot snapshot = board.snapshot();
+
+		for (int i = 0; i < 300; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			int x = random.nextInt(board.getWidth() - piece.getWidth() + 1);
+			int y = board.dropHeight(piece, x);
+			if (y + piece.getHeight() > board.getHeight()) {
+				board.reset();
+				snapshot = board.snapshot();
+				continue;
+			}
+			assertEquals(y, snapshot.dropHeight(piece, x));
+
+			board.place(piece, x, y);
+			board.clearRows();
+			board.commit();
+			snapshot = snapshot.place(piece, x, y).clearRows();
+			assertEquals(board.toString(), snapshot.toString());
+			assertEquals(board.toString(), board.snapshot().toString());
+
+			replay.restore(snapshot);
+			assertEquals(board.toString(), replay.toString());
+			assertEquals(board.getHash(), replay.getHash());
+			assertEquals(board.getHoles(), replay.getHoles());
+			replay.sanityCheck();
+		}
+	}
+
+}
@@ -1,333 +1,379 @@
+import java.util.*;
+
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
 
-public class BoardTest {
-
-	private Board board;
-
-	private Piece stick;
-	private Piece square;
-	private Piece pyramid;
-
-	@BeforeEach
-	protected void setUp() {
-		board = new Board(6, 8);
+public class BoardTest extends TetrisBoardTest {
 
-		stick = new Piece(Piece.STICK_STR);
-		square = new Piece(Piece.SQUARE_STR);
-		pyramid = new Piece(Piece.PYRAMID_STR);
+	@Override
+	protected TetrisBoard createBoard(int width, int height) {
+		return new Board(width, height);
 	}
 
 	@Test
-	public void getWidthTest() {
-		assertEquals(6, board.getWidth());
+	public void pushPopTest() {
+		Board deep = new Board(6, 8);
+		deep.place(stick, 0, 0);
+		deep.commit();
+		String start = deep.toString();
+
+		deep.push();
+		deep.place(square, 1, 0);
+		deep.clearRows();
+		String afterSquare = deep.toString();
+
+		deep.push();
+		assertEquals(2, deep.getDepth());
+		assertEquals(Board.PLACE_ROW_FILLED, deep.place(pyramid, 3, 0));
+		assertEquals(1, deep.clearRows());
+		deep.commit();
+		deep.place(stick, 5, 0);
+		deep.undo();
+		assertEquals(0, deep.getColumnHeight(5));
+		assertEquals(3, deep.getMaxHeight());
+
+		deep.pop();
+		assertEquals(afterSquare, deep.toString());
+		assertThrows(RuntimeException.class, () -> deep.place(stick, 5, 0));
+
+		deep.pop();
+		assertEquals(0, deep.getDepth());
+		assertEquals(start, deep.toString());
+		assertEquals(4, deep.getMaxHeight());
+		assertEquals(0, deep.getColumnHeight(1));
+
+		deep.undo();
+		assertEquals(start, deep.toString());
+		assertThrows(RuntimeException.class, () -> deep.pop());
 	}
 
 	@Test
-	public void getHeightTest() {
-		assertEquals(8, board.getHeight());
-	}
-
-	@Test
-	public void placeTest() {
-		int status;
-
-		status = board.place(stick, 0, 0);
-		assertEquals(board.PLACE_OK, status);
-		board.commit();
-
-		status = board.place(square, 1, 0);
-		assertEquals(board.PLACE_OK, status);
-		board.commit();
-
-		status = board.place(pyramid, 3, 0);
-		assertEquals(board.PLACE_ROW_FILLED, status);
-		board.commit();
-
-		status = board.place(stick, 0, 5);
-		assertEquals(board.PLACE_OUT_BOUNDS, status);
-		board.commit();
-
-		status = board.place(square, 3, 1);
-		assertEquals(board.PLACE_BAD, status);
+	public void insertRowsAtBottomTest() {
+		Board versus = new Board(6, 8);
+		versus.place(square, 0, 0);
+		versus.commit();
+		String before = versus.toString();
+
+		assertEquals(Board.PLACE_OK, versus.insertRowsAtBottom(2, 3));
+		assertEquals(4, versus.getMaxHeight());
+		assertEquals(4, versus.getColumnHeight(0));
+		assertEquals(2, versus.getColumnHeight(2));
+		assertEquals(0, versus.getColumnHeight(3));
+		assertEquals(5, versus.getRowWidth(0));
+		assertEquals(5, versus.getRowWidth(1));
+		assertEquals(2, versus.getRowWidth(2));
+		assertFalse(versus.getGrid(3, 1));
+		assertTrue(versus.getGrid(1, 3));
+
+		versus.undo();
+		assertEquals(before, versus.toString());
+		assertEquals(2, versus.getMaxHeight());
+		assertEquals(0, versus.getColumnHeight(3));
+
+		assertEquals(Board.PLACE_OK, versus.insertRowsAtBottom(2, 3));
+		versus.commit();
+		assertEquals(Board.PLACE_ROW_FILLED, versus.place(stick, 3, 0));
+		assertEquals(2, versus.clearRows());
+		versus.commit();
+		assertEquals("|      |\n" +
+				"|      |\n" +
+				"|      |\n" +
+				"|      |\n" +
+				"|      |\n" +
+				"|      |\n" +
+				"|++ +  |\n" +
+				"|++ +  |\n" +
+				"--------", versus.toString());
 
-		assertThrows(RuntimeException.class, () -> board.place(pyramid, 0, 0));
+		assertEquals(Board.PLACE_OUT_BOUNDS, versus.insertRowsAtBottom(7, 0));
+		versus.undo();
+		assertThrows(RuntimeException.class, () -> versus.insertRowsAtBottom(1, 6));
 	}
 
 	@Test
-	public void getMaxHeightTest() {
-		assertEquals(0, board.getMaxHeight());
-
-		board.place(stick, 0, 0);
-		board.commit();
-		assertEquals(4, board.getMaxHeight());
-
-		board.place(square, 1, 0);
-		board.commit();
-		assertEquals(4, board.getMaxHeight());
+	public void verifyModeTest() {
+		Board checked = new Board(6, 8);
+		checked.turnOnDebugMode();
+		assertEquals(Board.VERIFY_FULL, checked.getVerifyMode());
+		checked.turnOffDebugMode();
+		assertEquals(Board.VERIFY_OFF, checked.getVerifyMode());
+
+		for (int mode = Board.VERIFY_OFF; mode <= Board.VERIFY_FULL; mode++) {
+			checked.setVerifyMode(mode);
+			checked.setVerifyInterval(2);
+			checked.place(stick, 0, 0);
+			checked.commit();
+			checked.place(square, 1, 0);
+			checked.clearRows();
+			checked.undo();
+			checked.insertRowsAtBottom(1, 5);
+			checked.commit();
+			checked.sanityCheck();
+			checked = new Board(6, 8);
+		}
 
-		board.place(pyramid, 2, 5);
-		board.commit();
-		assertEquals(7, board.getMaxHeight());
+		Board bad = checked;
+		assertThrows(RuntimeException.class, () -> bad.setVerifyMode(4));
+		assertThrows(RuntimeException.class, () -> bad.setVerifyInterval(0));
 	}
 
 	@Test
-	public void getColumnHeightTest() {
-		for (int i = 0; i < board.getWidth(); i++) {
-			assertEquals(0, board.getColumnHeight(i));
+	public void verifyModeDetectsCorruptionTest() throws Exception {
+		for (int mode : new int[]{Board.VERIFY_INCREMENTAL, Board.VERIFY_FULL}) {
+			// A row count off by one is found once that row is touched again
+			Board corrupted = corruptedBoard(mode, "widths", 2, 1);
+			RuntimeException e = assertThrows(RuntimeException.class, () -> corrupted.place(square, 1, 2));
+			assertEquals("Incorrect widths!", e.getMessage());
+
+			// A column height off by one is found once that column is touched again
+			Board tall = corruptedBoard(mode, "heights", 3, 1);
+			assertThrows(RuntimeException.class, () -> tall.place(square, 3, 0));
 		}
 
-		board.place(stick, 0, 0);
-		board.commit();
-		board.place(square, 1, 0);
-		board.commit();
-		board.place(pyramid, 2, 5);
-		board.commit();
-
-		assertEquals(4, board.getColumnHeight(0));
-		assertEquals(2, board.getColumnHeight(1));
-		assertEquals(6, board.getColumnHeight(2));
-		assertEquals(7, board.getColumnHeight(3));
-		assertEquals(6, board.getColumnHeight(4));
-		assertEquals(0, board.getColumnHeight(5));
+		// With checking off the same corruption goes unnoticed
+		Board unchecked = corruptedBoard(Board.VERIFY_OFF, "widths", 2, 1);
+		unchecked.place(square, 1, 2);
 	}
 
-	@Test
-	public void getRowWidthTest() {
-		for (int i = 0; i < board.getHeight(); i++) {
-			assertEquals(0, board.getRowWidth(i));
-		}
-
-		board.place(stick, 0, 0);
-		board.commit();
-		board.place(square, 1, 0);
-		board.commit();
-		board.place(pyramid, 2, 5);
-		board.commit();
-
-		assertEquals(3, board.getRowWidth(0));
-		assertEquals(3, board.getRowWidth(1));
-		assertEquals(1, board.getRowWidth(2));
-		assertEquals(1, board.getRowWidth(3));
-		assertEquals(0, board.getRowWidth(4));
-		assertEquals(3, board.getRowWidth(5));
-		assertEquals(1, board.getRowWidth(6));
-		assertEquals(0, board.getRowWidth(7));
+	// A board with a stick in column 0 and one bookkeeping entry bumped behind its back
+	private Board corruptedBoard(int mode, String field, int index, int delta) throws Exception {
+		Board corrupted = new Board(6, 8);
+		corrupted.setVerifyMode(mode);
+		corrupted.place(stick, 0, 0);
+		corrupted.commit();
+
+		java.lang.reflect.Field counts = Board.class.getDeclaredField(field);
+		counts.setAccessible(true);
+		((int[])counts.get(corrupted))[index] += delta;
+		return corrupted;
 	}
 
 	@Test
-	public void getGridTest() {
-		assertFalse(board.getGrid(0, 0));
-
-		board.place(stick, 0, 0);
-		board.commit();
-
-		assertTrue(board.getGrid(0, 1));
-		assertFalse(board.getGrid(1, 0));
-
-		assertTrue(board.getGrid(-1, 0));
-		assertTrue(board.getGrid(0, -1));
-		assertTrue(board.getGrid(8, 0));
-		assertTrue(board.getGrid(0, 8));
+	public void hashTest() {
+		Board first = new Board(6, 8);
+		Board second = new Board(6, 8);
+		assertEquals(0, first.getHash());
+
+		first.place(stick, 0, 0);
+		first.commit();
+		first.place(square, 1, 0);
+		first.commit();
+		second.place(square, 1, 0);
+		second.commit();
+		second.place(stick, 0, 0);
+		second.commit();
+		assertEquals(first.getHash(), second.getHash());
+
+		long before = first.getHash();
+		first.place(pyramid, 3, 0);
+		assertNotEquals(before, first.getHash());
+		first.clearRows();
+		first.undo();
+		assertEquals(before, first.getHash());
+
+		first.place(pyramid, 3, 0);
+		assertEquals(1, first.clearRows());
+		first.commit();
+
+		Board third = new Board(6, 8);
+		third.place(new Piece("0 0  0 1  0 2"), 0, 0);
+		third.commit();
+		third.place(new Piece("0 0  1 0"), 1, 0);
+		third.commit();
+		third.place(new Piece("0 0"), 4, 0);
+		third.commit();
+		assertEquals(third.toString(), first.toString());
+		assertEquals(third.getHash(), first.getHash());
+		assertNotEquals(second.getHash(), first.getHash());
 	}
 
 	@Test
-	public void dropHeightTest() {
-		assertEquals(0, board.dropHeight(stick, 0));
-
-		board.place(stick, 0, 0);
-		board.commit();
-
-		assertEquals(4, board.dropHeight(square, 0));
-		assertEquals(0, board.dropHeight(square, 1));
-
-		board.place(square, 1, 0);
-		board.commit();
-
-		assertEquals(4, board.dropHeight(pyramid, 0));
-		assertEquals(2, board.dropHeight(pyramid, 1));
-		assertEquals(0, board.dropHeight(pyramid, 3));
+	public void statisticsTest() {
+		Board stats = new Board(6, 8);
+		stats.place(stick, 0, 0);
+		stats.commit();
+		stats.place(square, 2, 0);
+		stats.commit();
+		stats.place(new Piece("0 0"), 5, 2);
+		stats.commit();
+
+		assertEquals(11, stats.getTotalHeight());
+		assertEquals(2, stats.getHoles());
+		assertEquals(11, stats.getBumpiness());
+		assertEquals(0, stats.getWellDepth(0));
+		assertEquals(2, stats.getWellDepth(1));
+		assertEquals(2, stats.getWellDepth(4));
+		assertEquals(0, stats.getWellDepth(5));
+		assertEquals(4, stats.getTotalWellDepth());
+
+		stats.place(new Piece("0 0  1 0  2 0  3 0"), 1, 2);
+		assertEquals(6, stats.getHoles());
+		stats.undo();
+		assertEquals(2, stats.getHoles());
+		assertEquals(11, stats.getBumpiness());
+		assertEquals(4, stats.getTotalWellDepth());
+
+		stats.insertRowsAtBottom(1, 1);
+		stats.commit();
+		assertEquals(16, stats.getTotalHeight());
+		assertEquals(2, stats.getHoles());
 	}
 
 	@Test
-	public void clearRowsTest() {
-		int rowsCleared;
-
-		rowsCleared = board.clearRows();
-		assertEquals(0, rowsCleared);
-
-		board.commit();
-		board.place(stick, 0, 0);
-		rowsCleared = board.clearRows();
-		assertEquals(0, rowsCleared);
-
-		board.commit();
-		board.place(square, 1, 0);
-		rowsCleared = board.clearRows();
-		assertEquals(0, rowsCleared);
-
-		board.commit();
-		board.place(pyramid, 3, 0);
-		rowsCleared = board.clearRows();
-		assertEquals(1, rowsCleared);
-
-		rowsCleared = board.clearRows();
-		assertEquals(0, rowsCleared);
-
-		board.commit();
-		board.place(square, 1, 1);
-		rowsCleared = board.clearRows();
-		assertEquals(0, rowsCleared);
-
-		board.commit();
-		board.place(square, 3, 1);
-		rowsCleared = board.clearRows();
-		assertEquals(0, rowsCleared);
-
-		board.commit();
-		board.place(stick, 5, 1);
-		rowsCleared = board.clearRows();
-		assertEquals(2, rowsCleared);
-
-		rowsCleared = board.clearRows();
-		assertEquals(0, rowsCleared);
-
-		assertEquals(1, board.getColumnHeight(0));
-		assertEquals(1, board.getColumnHeight(1));
-		assertEquals(1, board.getColumnHeight(2));
-		assertEquals(0, board.getColumnHeight(3));
-		assertEquals(1, board.getColumnHeight(4));
-		assertEquals(3, board.getColumnHeight(5));
-
-		assertEquals(4, board.getRowWidth(0));
-		assertEquals(1, board.getRowWidth(1));
-		assertEquals(1, board.getRowWidth(2));
-		assertEquals(0, board.getRowWidth(3));
-		assertEquals(0, board.getRowWidth(4));
-		assertEquals(0, board.getRowWidth(5));
-		assertEquals(0, board.getRowWidth(6));
-		assertEquals(0, board.getRowWidth(7));
-
-		assertEquals(3, board.getMaxHeight());
+	public void dirtyTrackingTest() {
+		Board dirty = new Board(6, 8);
+		BitSet rows = new BitSet();
+		BitSet columns = new BitSet();
+
+		dirty.place(stick, 0, 0);
+		dirty.commit();
+		long epoch = dirty.getEpoch();
+		assertTrue(dirty.getDirtyRows(epoch, rows).isEmpty());
+
+		dirty.place(square, 1, 2);
+		dirty.getDirtyRows(epoch, rows);
+		dirty.getDirtyColumns(epoch, columns);
+		assertEquals("{2, 3}", rows.toString());
+		assertEquals("{1, 2}", columns.toString());
+
+		epoch = dirty.getEpoch();
+		dirty.undo();
+		assertEquals("{2, 3}", dirty.getDirtyRows(epoch, rows).toString());
+		assertEquals("{1, 2}", dirty.getDirtyColumns(epoch, columns).toString());
+
+		dirty.place(square, 1, 0);
+		dirty.commit();
+		dirty.place(pyramid, 3, 0);
+		dirty.commit();
+		epoch = dirty.getEpoch();
+		dirty.clearRows();
+		assertEquals("{0, 1, 2, 3}", dirty.getDirtyRows(epoch, rows).toString());
+		assertEquals("{0, 1, 2, 3, 4, 5}", dirty.getDirtyColumns(epoch, columns).toString());
 	}
 
 	@Test
-	public void undoTest() {
-		board.place(stick, 0, 0);
-		board.undo();
-
-		for (int i = 0; i < board.getWidth(); i++) {
-			assertEquals(0, board.getColumnHeight(i));
-		}
-		for (int i = 0; i < board.getHeight(); i++) {
-			assertEquals(0, board.getRowWidth(i));
-		}
-		assertEquals(0, board.getMaxHeight());
-
-		board.place(stick, 0, 0);
-		board.commit();
-		board.undo();
+	public void copyFromTest() {
+		Board original = new Board(6, 8);
+		original.place(stick, 0, 0);
+		original.commit();
+		original.place(pyramid, 1, 3);
+		original.commit();
+
+		Board copy = new Board(original);
+		assertEquals(original.toString(), copy.toString());
+		assertEquals(original.getHash(), copy.getHash());
+		assertEquals(original.getHoles(), copy.getHoles());
+		assertEquals(original.getBumpiness(), copy.getBumpiness());
+
+		copy.place(square, 4, 0);
+		copy.commit();
+		assertEquals(0, original.getColumnHeight(4));
+		copy.undo();
+		assertEquals(2, copy.getColumnHeight(4));
+
+		copy.copyFrom(original);
+		assertEquals(original.toString(), copy.toString());
+		assertEquals(original.getHash(), copy.getHash());
+		copy.sanityCheck();
+
+		assertThrows(RuntimeException.class, () -> copy.copyFrom(new Board(6, 9)));
+	}
 
-		for (int i = 0; i < board.getWidth(); i++) {
-			if (i == 0) {
-				assertEquals(4, board.getColumnHeight(i));
-			} else {
-				assertEquals(0, board.getColumnHeight(i));
-			}
-		}
-		for (int i = 0; i < board.getHeight(); i++) {
-			if (i < 4) {
-				assertEquals(1, board.getRowWidth(i));
-			} else {
-				assertEquals(0, board.getRowWidth(i));
-			}
-		}
-		assertEquals(4, board.getMaxHeight());
-
-		board.place(square, 1, 0);
-		board.commit();
-
-		board.place(pyramid, 3, 0);
-		board.clearRows();
-		board.undo();
-
-		for (int i = 0; i < board.getWidth(); i++) {
-			if (i == 0) {
-				assertEquals(4, board.getColumnHeight(i));
-			} else if (i < 3){
-				assertEquals(2, board.getColumnHeight(i));
-			} else {
-				assertEquals(0, board.getColumnHeight(i));
-			}
-		}
-		for (int i = 0; i < board.getHeight(); i++) {
-			if (i < 2) {
-				assertEquals(3, board.getRowWidth(i));
-			} else if (i < 4) {
-				assertEquals(1, board.getRowWidth(i));
-			} else {
-				assertEquals(0, board.getRowWidth(i));
+	@Test
+	public void dropHeightsTest() {
+		Board drops = new Board(6, 8);
+		drops.place(stick, 0, 0);
+		drops.commit();
+		drops.place(square, 2, 0);
+		drops.commit();
+
+		int[] out = new int[6];
+		assertEquals(4, drops.dropHeights(pyramid, out));
+		assertArrayEquals(new int[]{4, 2, 2, 2}, Arrays.copyOf(out, 4));
+
+		Piece l = Piece.getPieces()[Piece.L1];
+		int[][] all = new int[4][6];
+		assertEquals(4, drops.dropHeights(l, all));
+		Piece current = l;
+		for (int r = 0; r < 4; r++, current = current.fastRotation()) {
+			for (int x = 0; x <= drops.getWidth() - current.getWidth(); x++) {
+				assertEquals(drops.dropHeight(current, x), all[r][x]);
 			}
 		}
-		assertEquals(4, board.getMaxHeight());
-
-		board.place(pyramid, 3, 0);
-		board.clearRows();
-		board.commit();
-		board.undo();
-
-		assertEquals(3, board.getColumnHeight(0));
-		assertEquals(1, board.getColumnHeight(1));
-		assertEquals(1, board.getColumnHeight(2));
-		assertEquals(0, board.getColumnHeight(3));
-		assertEquals(1, board.getColumnHeight(4));
-		assertEquals(0, board.getColumnHeight(5));
-
-		assertEquals(4, board.getRowWidth(0));
-		assertEquals(1, board.getRowWidth(1));
-		assertEquals(1, board.getRowWidth(2));
-		assertEquals(0, board.getRowWidth(3));
-		assertEquals(0, board.getRowWidth(4));
-		assertEquals(0, board.getRowWidth(5));
-		assertEquals(0, board.getRowWidth(6));
-		assertEquals(0, board.getRowWidth(7));
-
-		assertEquals(3, board.getMaxHeight());
+		assertEquals(1, drops.dropHeights(Piece.getPieces()[Piece.SQUARE], all));
 	}
 
 	@Test
-	public void toStringTest() {
-		assertEquals("|      |\n" +
-				"|      |\n" +
-				"|      |\n" +
-				"|      |\n" +
-				"|      |\n" +
-				"|      |\n" +
-				"|      |\n" +
-				"|      |\n" +
-				"--------", board.toString());
-
-		board.place(stick, 0, 0);
-		board.commit();
+	public void previewPlacementTest() {
+		Board real = new Board(8, 16);
+		Piece[] pieces = Piece.getPieces();
+		Random random = new Random(108);
+		Board.Preview preview = new Board.Preview();
+
+		for (int i = 0; i < 1000; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			int x = random.nextInt(real.getWidth() - piece.getWidth() + 1);
+			int y = random.nextBoolean() ? real.dropHeight(piece, x) : random.nextInt(real.getHeight());
+
+			long epoch = real.getEpoch();
+			int holes = real.getHoles();
+			real.previewPlacement(piece, x, y, preview);
+			assertEquals(epoch, real.getEpoch());
+
+			int status = real.place(piece, x, y);
+			assertEquals(status, preview.status);
+			if (status >= Board.PLACE_OUT_BOUNDS) {
+				real.undo();
+				continue;
+			}
+			assertEquals(real.clearRows(), preview.rowsCleared);
+			assertEquals(real.getMaxHeight(), preview.maxHeight);
+			assertEquals(real.getTotalHeight(), preview.totalHeight);
+			assertEquals(real.getHoles(), preview.holes);
+			assertEquals(real.getHoles() - holes, preview.holeDelta);
+			for (int col = 0; col < real.getWidth(); col++) {
+				assertEquals(real.getColumnHeight(col), preview.heights[col]);
+			}
 
-		assertEquals("|      |\n" +
-				"|      |\n" +
-				"|      |\n" +
-				"|      |\n" +
-				"|+     |\n" +
-				"|+     |\n" +
-				"|+     |\n" +
-				"|+     |\n" +
-				"--------", board.toString());
+			if (real.getMaxHeight() > real.getHeight() - 4) real.reset();
+			else real.commit();
+		}
 	}
 
 	@Test
-	public void debugTest() {
-		board.turnOffDebugMode();
-		board.sanityCheck();
+	public void lastMoveTest() {
+		Board last = new Board(4, 8);
+		Piece flat = Piece.getPieces()[Piece.STICK].fastRotation();
+		last.place(stick, 0, 0);
+		last.commit();
+		assertLastMove(last, 0, 4, 0);
+
+		// A cleared row, then undo() back to the stick
+		last.place(flat, 0, 5);
+		assertEquals(1, last.clearRows());
+		assertLastMove(last, 5, 1, 1);
+		last.undo();
+		assertLastMove(last, 0, 4, 0);
+
+		// Two plies under push(), unwound by pop()
+		last.push();
+		last.place(square, 1, 0);
+		last.commit();
+		last.push();
+		last.place(flat, 0, 4);
+		last.clearRows();
+		assertLastMove(last, 4, 1, 1);
+		last.pop();
+		assertLastMove(last, 0, 2, 0);
+		last.pop();
+		assertLastMove(last, 0, 4, 0);
+		last.sanityCheck();
+	}
 
-		board.turnOnDebugMode();
-		board.sanityCheck();
+	private static void assertLastMove(Board board, int placeY, int placeHeight, int rowsCleared) {
+		assertEquals(placeY, board.getLastPlaceY());
+		assertEquals(placeHeight, board.getLastPlaceHeight());
+		assertEquals(rowsCleared, board.getLastRowsCleared());
 	}
 
 }
@@ -9,6 +9,7 @@ public interface Brain {
         public int y;
         public Piece piece;
         public double score;    // lower scores are better
+        public boolean complete = true;    // false if an AnytimeBrain ran out of time
     }
     
     /**
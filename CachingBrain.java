@@ -0,0 +1,58 @@
+/**
+ A DefaultBrain that remembers its answers in a TranspositionTable.
+ bestMove() looks the board, piece and limitHeight up before
+ searching and stores what it finds, and rateBoard() does the same
+ per board, so the rates inside a search are shared too -- by every
+ brain that uses this one as its rater.
+
+ Only the rater's rateBoard() is used: bestMove() is DefaultBrain's
+ search over the cached scores, so a CachingBrain plays like
+ DefaultBrain would with the rater's scores, not like a rater that
+ overrides bestMove(). Scores are keyed on the grid and the last
+ place() and clearRows() (see TranspositionTable.scoreKey()), so the
+ rater's rateBoard() must depend on nothing else.
+
+ Call nextAge() on the table once per real move so old positions
+ make room for new ones. Scores in a table are only good for the
+ rater that made them, so don't share one across raters.
+*/
+public class CachingBrain extends DefaultBrain {
+    private final DefaultBrain rater;
+    private final TranspositionTable table;
+
+    public CachingBrain(TranspositionTable table) {
+        this(new DefaultBrain(), table);
+    }
+
+    public CachingBrain(DefaultBrain rater, TranspositionTable table) {
+        this.rater = rater;
+        this.table = table;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    @Override
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+        if (move==null) move = new Brain.Move();
+
+        long key = TranspositionTable.moveKey(board, piece, limitHeight);
+        if (table.probeMove(key, 1, move)) return(move);
+
+        if (super.bestMove(board, piece, limitHeight, move) == null) return(null);
+        table.storeMove(key, 1, move);
+        return(move);
+    }
+
+    @Override
+    public double rateBoard(Board board) {
+        long key = TranspositionTable.scoreKey(board);
+        double score = table.probeScore(key);
+        if (Double.isNaN(score)) {
+            score = rater.rateBoard(board);
+            table.storeScore(key, 0, score);
+        }
+        return score;
+    }
+}
@@ -32,14 +32,17 @@ public class DefaultBrain implements Brain {
         
         board.commit();
         
+        // landing y for every column of a rotation, filled in one pass
+        int[] drops = new int[board.getWidth()];
+        
         // loop through all the rotations
         while (true) {
             final int yBound = limitHeight - current.getHeight()+1;
-            final int xBound = board.getWidth() - current.getWidth()+1;
+            final int xBound = board.dropHeights(current, drops);
             
             // For current rotation, try all the possible columns
             for (int x = 0; x<xBound; x++) {
-                int y = board.dropHeight(current, x);
+                int y = drops[x];
                 if (y<yBound) {    // piece does not stick up too far
                     int result = board.place(current, x, y);
                     if (result <= Board.PLACE_ROW_FILLED) {
@@ -69,6 +72,7 @@ public class DefaultBrain implements Brain {
             move.y = bestY;
             move.piece = bestPiece;
             move.score = bestScore;
+            move.complete = true;
             return(move);
         }
     }
@@ -80,28 +84,15 @@ public class DefaultBrain implements Brain {
      that board position -- larger numbers for worse boards.
      This version just counts the height
      and the number of "holes" in the board.
+     Board keeps both sums up to date as pieces are placed,
+     so there is no need to scan the columns here.
     */
     public double rateBoard(Board board) {
         final int width = board.getWidth();
         final int maxHeight = board.getMaxHeight();
         
-        int sumHeight = 0;
-        int holes = 0;
-        
-        // Count the holes, and sum up the heights
-        for (int x=0; x<width; x++) {
-            final int colHeight = board.getColumnHeight(x);
-            sumHeight += colHeight;
-            
-            int y = colHeight - 2;    // addr of first possible hole
-            
-            while (y>=0) {
-                if  (!board.getGrid(x,y)) {
-                    holes++;
-                }
-                y--;
-            }
-        }
+        int sumHeight = board.getTotalHeight();
+        int holes = board.getHoles();
         
         double avgHeight = ((double)sumHeight)/width;
         
@@ -0,0 +1,269 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ A brain that plans for the piece after this one without knowing it.
+ JTetris picks every piece in Piece.getPieces() with the same chance,
+ so each drop of the current piece is scored by the average, over
+ those pieces, of the best rateBoard() reachable by dropping that
+ piece next. The lowest average wins.
+
+ The next-piece branches of a drop run at the same time on the
+ executor, each on its own board copy from a BoardPool. Drops are
+ tried best-first by their own rateBoard(), and once the finished
+ branches of a drop, plus scoreFloor for each unfinished one, add up
+ to clearly more than the best average so far, the rest of its
+ branches are cancelled. scoreFloor must be no higher than any score rateBoard()
+ can return; 0 is right for DefaultBrain's.
+
+ Branch results are summed in piece order, not finishing order, and
+ ties go to the drop DefaultBrain would try first, so the answer
+ does not depend on thread timing.
+
+ With a deadline, the one-piece ratings are always finished first
+ and stand in as the answer; drops then get their expectation in
+ best-first order until time runs out, and the best of those that
+ finished wins. The in-flight drop is cancelled and left out.
+*/
+public class ExpectimaxBrain implements AnytimeBrain {
+    // Score of a branch where the next piece cannot be played at all
+    public static final double LOSS = 1e20;
+
+    // Relative slack on the prune bound, far above the rounding error of summing the branches
+    private static final double PRUNE_SLACK = 1e-9;
+
+    private final DefaultBrain rater;
+    private final Executor executor;
+    private double scoreFloor = 0;
+    private volatile BoardPool boardPool;
+
+    /*
+     Runs its branches on a pool of its own rather than the common
+     fork/join pool: bestMove() blocks waiting for them, and a caller
+     that is itself a common-pool task (inside ParallelBrain, say) could
+     otherwise tie up the threads its branches need.
+    */
+    public ExpectimaxBrain() {
+        this(new DefaultBrain(), defaultExecutor());
+    }
+
+    // bestMove() blocks on executor, so it must never be called from one of executor's own threads
+    public ExpectimaxBrain(DefaultBrain rater, Executor executor) {
+        this.rater = rater;
+        this.executor = executor;
+    }
+
+    public double getScoreFloor() {
+        return scoreFloor;
+    }
+
+    public void setScoreFloor(double scoreFloor) {
+        this.scoreFloor = scoreFloor;
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+        return bestMove(board, piece, limitHeight, move, NO_DEADLINE);
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move, long deadline) {
+        board.commit();
+
+        BoardPool pool = boardPool;
+        if (pool == null || pool.getWidth() != board.getWidth() || pool.getHeight() != board.getHeight()) {
+            pool = new BoardPool(board.getWidth(), board.getHeight());
+            boardPool = pool;
+        }
+
+        // List the drops in the order DefaultBrain tries them, with their own scores
+        int width = board.getWidth();
+        List<Piece> rotations = new ArrayList<>();
+        Piece current = piece;
+        do {
+            rotations.add(current);
+            current = current.fastRotation();
+        } while (current != null && current != piece);
+
+        Piece[] candidatePieces = new Piece[rotations.size() * width];
+        int[] candidateX = new int[candidatePieces.length];
+        int[] candidateY = new int[candidatePieces.length];
+        double[] candidateScore = new double[candidatePieces.length];
+        int count = 0;
+        int[] drops = new int[width];
+        for (Piece rotation : rotations) {
+            final int yBound = limitHeight - rotation.getHeight()+1;
+            final int xBound = board.dropHeights(rotation, drops);
+            for (int x = 0; x<xBound; x++) {
+                int y = drops[x];
+                if (y<yBound) {
+                    int result = board.place(rotation, x, y);
+                    if (result <= Board.PLACE_ROW_FILLED) {
+                        if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+                        candidatePieces[count] = rotation;
+                        candidateX[count] = x;
+                        candidateY[count] = y;
+                        candidateScore[count] = rater.rateBoard(board);
+                        count++;
+                    }
+                    board.undo();
+                }
+            }
+        }
+        if (count == 0) return(null);    // could not find a play at all!
+
+        // Best-first, so the bound gets tight early; the sort is stable for ties
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(candidateScore[a], candidateScore[b]));
+
+        Piece[] nextPieces = Piece.getPieces();
+        int branches = nextPieces.length;
+        double[] results = new double[branches];
+        CompletionService<Integer> service = new ExecutorCompletionService<>(executor);
+
+        double bestScore = LOSS;
+        int bestIndex = -1;
+        boolean complete = true;
+        for (int candidate : order) {
+            if (timeUp(deadline)) {
+                complete = false;
+                break;
+            }
+
+            Board placed = pool.acquireCopy(board);
+            if (placed.place(candidatePieces[candidate], candidateX[candidate], candidateY[candidate]) == Board.PLACE_ROW_FILLED) placed.clearRows();
+            placed.commit();
+
+            AtomicBoolean cancelled = new AtomicBoolean();
+            for (int b = 0; b < branches; b++) {
+                service.submit(new Branch(placed, pool, nextPieces[b], limitHeight, results, b, cancelled));
+            }
+
+            // finishedSum adds up in finishing order, so a drop that ties the best may round a
+            // little above it; the slack keeps those from being pruned before the tie-break
+            double bound = bestScore * branches;
+            bound += Math.max(Math.abs(bound), 1) * PRUNE_SLACK;
+
+            // Every branch is waited for, even cancelled ones, before placed goes back to the pool
+            double finishedSum = 0;
+            for (int finished = 1; finished <= branches; finished++) {
+                finishedSum += results[take(service, deadline, cancelled)];
+                if (finishedSum + (branches - finished) * scoreFloor > bound) cancelled.set(true);
+            }
+            pool.release(placed);
+            if (cancelled.get()) {
+                if (timeUp(deadline)) {
+                    complete = false;
+                    break;
+                }
+                continue;
+            }
+
+            double sum = 0;
+            for (int b = 0; b < branches; b++) sum += results[b];
+            double expected = sum / branches;
+            if (expected < bestScore || (expected == bestScore && candidate < bestIndex)) {
+                bestScore = expected;
+                bestIndex = candidate;
+            }
+        }
+
+        // Every line loses, or time ran out first, so take the best-looking drop
+        if (bestIndex < 0) {
+            bestIndex = order[0];
+            if (!complete) bestScore = candidateScore[bestIndex];
+        }
+        if (move==null) move = new Brain.Move();
+        move.x = candidateX[bestIndex];
+        move.y = candidateY[bestIndex];
+        move.piece = candidatePieces[bestIndex];
+        move.score = bestScore;
+        move.complete = complete;
+        return(move);
+    }
+
+    private static ExecutorService sharedExecutor;
+
+    // One daemon pool, sized to the machine, for every ExpectimaxBrain made without an executor
+    private static synchronized Executor defaultExecutor() {
+        if (sharedExecutor == null) {
+            sharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "ExpectimaxBrain");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedExecutor;
+    }
+
+    private static boolean timeUp(long deadline) {
+        return (deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0);
+    }
+
+    // Waits for the next branch, cancelling the rest once the deadline passes
+    private static int take(CompletionService<Integer> service, long deadline, AtomicBoolean cancelled) {
+        try {
+            if (deadline != NO_DEADLINE && !cancelled.get()) {
+                Future<Integer> done = service.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (done != null) return done.get();
+                cancelled.set(true);
+            }
+            return service.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a branch!", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Branch failed!", e.getCause());
+        }
+    }
+
+    // Best drop of one next piece on a copy of the placed board
+    private class Branch implements Callable<Integer> {
+        private final Board placed;
+        private final BoardPool pool;
+        private final Piece piece;
+        private final int limitHeight;
+        private final double[] results;
+        private final int index;
+        private final AtomicBoolean cancelled;
+
+        Branch(Board placed, BoardPool pool, Piece piece, int limitHeight, double[] results, int index, AtomicBoolean cancelled) {
+            this.placed = placed;
+            this.pool = pool;
+            this.piece = piece;
+            this.limitHeight = limitHeight;
+            this.results = results;
+            this.index = index;
+            this.cancelled = cancelled;
+        }
+
+        public Integer call() {
+            double best = LOSS;
+            Board board = pool.acquireCopy(placed);
+            try {
+                int[] drops = new int[board.getWidth()];
+                Piece current = piece;
+                do {
+                    final int yBound = limitHeight - current.getHeight()+1;
+                    final int xBound = board.dropHeights(current, drops);
+                    for (int x = 0; x<xBound && !cancelled.get(); x++) {
+                        int y = drops[x];
+                        if (y<yBound) {
+                            int result = board.place(current, x, y);
+                            if (result <= Board.PLACE_ROW_FILLED) {
+                                if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+                                best = Math.min(best, rater.rateBoard(board));
+                            }
+                            board.undo();
+                        }
+                    }
+                    current = current.fastRotation();
+                } while (current != null && current != piece);
+            } finally {
+                pool.release(board);
+            }
+            results[index] = best;
+            return index;
+        }
+    }
+}
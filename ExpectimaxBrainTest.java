@@ -0,0 +1,127 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpectimaxBrainTest {
+
+	private ExecutorService executor;
+	private Piece[] pieces;
+
+	@BeforeEach
+	protected void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+		pieces = Piece.getPieces();
+	}
+
+	@AfterEach
+	protected void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void pruningTest() {
+		// Same moves on a pool with pruning as on one thread without it
+		ExpectimaxBrain parallel = new ExpectimaxBrain(new DefaultBrain(), executor);
+		ExpectimaxBrain serial = new ExpectimaxBrain(new DefaultBrain(), Runnable::run);
+		serial.setScoreFloor(Double.NEGATIVE_INFINITY);
+
+		Board board = new Board(10, 24);
+		Random random = new Random(21);
+		for (int i = 0; i < 30; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			Brain.Move expected = serial.bestMove(board, piece, 20, null);
+			Brain.Move actual = parallel.bestMove(board, piece, 20, null);
+			assertSame(expected.piece, actual.piece);
+			assertEquals(expected.x, actual.x);
+			assertEquals(expected.y, actual.y);
+			assertEquals(expected.score, actual.score);
+
+			board.place(expected.piece, expected.x, expected.y);
+			board.clearRows();
+			board.commit();
+		}
+	}
+
+	@Test
+	public void completionOrderTest() {
+		// Branches finishing last to first must not change the answer, ties included
+		List<Runnable> held = new ArrayList<>();
+		Executor reversed = task -> {
+			held.add(task);
+			if (held.size() == pieces.length) {
+				for (int i = held.size() - 1; i >= 0; i--) held.get(i).run();
+				held.clear();
+			}
+		};
+		ExpectimaxBrain backwards = new ExpectimaxBrain(new DefaultBrain(), reversed);
+		ExpectimaxBrain serial = new ExpectimaxBrain(new DefaultBrain(), Runnable::run);
+		serial.setScoreFloor(Double.NEGATIVE_INFINITY);
+
+		Board board = new Board(10, 24);
+		Random random = new Random(121);
+		for (int i = 0; i < 30; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			Brain.Move expected = serial.bestMove(board, piece, 20, null);
+			Brain.Move actual = backwards.bestMove(board, piece, 20, null);
+			assertSame(expected.piece, actual.piece);
+			assertEquals(expected.x, actual.x);
+			assertEquals(expected.y, actual.y);
+
+			board.place(expected.piece, expected.x, expected.y);
+			board.clearRows();
+			board.commit();
+		}
+	}
+
+	@Test
+	public void commonPoolCallerTest() throws Exception {
+		// Called from inside common-pool tasks, the default brain still gets its branches run
+		ExpectimaxBrain expectimax = new ExpectimaxBrain();
+		Board board = new Board(10, 24);
+		List<ForkJoinTask<Brain.Move>> tasks = new ArrayList<>();
+		for (int i = 0; i < 2 * ForkJoinPool.getCommonPoolParallelism() + 2; i++) {
+			Piece piece = pieces[i % pieces.length];
+			tasks.add(ForkJoinPool.commonPool().submit(() -> new ExpectimaxBrain().bestMove(new Board(board), piece, 20, null)));
+		}
+		for (ForkJoinTask<Brain.Move> task : tasks) assertNotNull(task.get(30, TimeUnit.SECONDS));
+		assertNotNull(expectimax.bestMove(board, pieces[Piece.SQUARE], 20, null));
+	}
+
+	@Test
+	public void expectedScoreTest() {
+		// On an empty board the score is the average of each piece's best follow-up
+		Board board = new Board(10, 24);
+		DefaultBrain rater = new DefaultBrain();
+		Brain.Move move = new ExpectimaxBrain(rater, executor).bestMove(board, pieces[Piece.SQUARE], 20, null);
+
+		board.place(move.piece, move.x, move.y);
+		board.commit();
+		double sum = 0;
+		for (Piece next : pieces) sum += rater.bestMove(board, next, 20, null).score;
+		assertEquals(sum / pieces.length, move.score, 1e-9);
+	}
+
+	@Test
+	public void noMoveTest() {
+		assertNull(new ExpectimaxBrain(new DefaultBrain(), executor).bestMove(new Board(3, 4), pieces[Piece.STICK], 2, null));
+	}
+
+	@Test
+	public void deadlineTest() {
+		Board board = new Board(10, 24);
+		ExpectimaxBrain expectimax = new ExpectimaxBrain(new DefaultBrain(), executor);
+		assertTrue(expectimax.bestMove(board, pieces[Piece.L2], 20, null, AnytimeBrain.NO_DEADLINE).complete);
+
+		// Out of time before any expectation: the best one-piece drop stands in
+		Brain.Move late = expectimax.bestMove(board, pieces[Piece.L2], 20, null, System.nanoTime() - 1);
+		assertFalse(late.complete);
+		Brain.Move shallow = new DefaultBrain().bestMove(board, pieces[Piece.L2], 20, null);
+		assertSame(shallow.piece, late.piece);
+		assertEquals(shallow.x, late.x);
+		assertEquals(shallow.y, late.y);
+		assertEquals(shallow.score, late.score);
+	}
+
+}
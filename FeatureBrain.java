@@ -0,0 +1,132 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ A DefaultBrain whose rateBoard() is a weighted sum of board
+ features, so a new heuristic is a new weight file rather than
+ a new class. features() fills a double[] in one pass over the
+ rows up to maxHeight; the height, hole, bumpiness and well
+ features come straight from the board's running totals, and
+ rows cleared and landing height from its journaled record of the
+ last place() and clearRows(), so they stay right across undo().
+
+ Weight files are properties files with one line per feature,
+ named as in FEATURE_NAMES, e.g. "holes = 1.25". Features left
+ out get DEFAULT_WEIGHTS, which score boards exactly the way
+ DefaultBrain does.
+*/
+public class FeatureBrain extends DefaultBrain {
+    public static final int MAX_HEIGHT          = 0;
+    public static final int AVG_HEIGHT          = 1;
+    public static final int HOLES               = 2;
+    public static final int BUMPINESS           = 3;
+    public static final int ROW_TRANSITIONS     = 4;
+    public static final int COLUMN_TRANSITIONS  = 5;
+    public static final int WELLS               = 6;
+    public static final int ROWS_CLEARED        = 7;
+    public static final int LANDING_HEIGHT      = 8;
+    public static final int FEATURE_COUNT       = 9;
+
+    public static final String[] FEATURE_NAMES = {
+        "maxHeight", "avgHeight", "holes", "bumpiness", "rowTransitions",
+        "columnTransitions", "wells", "rowsCleared", "landingHeight",
+    };
+
+    // DefaultBrain's 8*maxHeight + 40*avgHeight + 1.25*holes
+    public static final double[] DEFAULT_WEIGHTS = { 8, 40, 1.25, 0, 0, 0, 0, 0, 0 };
+
+    private final double[] weights;
+
+    // rateBoard() may be called from several search threads at once
+    private final ThreadLocal<double[]> scratch = ThreadLocal.withInitial(() -> new double[FEATURE_COUNT]);
+
+    public FeatureBrain() {
+        this(DEFAULT_WEIGHTS);
+    }
+
+    public FeatureBrain(double[] weights) {
+        if (weights.length != FEATURE_COUNT) throw new RuntimeException("Need " + FEATURE_COUNT + " weights!");
+        this.weights = weights.clone();
+    }
+
+    // Loads the weights from a file, or else a classpath resource with that name
+    public FeatureBrain(String weightFile) {
+        this(loadWeights(weightFile));
+    }
+
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    @Override
+    public double rateBoard(Board board) {
+        double[] f = features(board, scratch.get());
+        double score = 0;
+        for (int i = 0; i < FEATURE_COUNT; i++) score += weights[i] * f[i];
+        return score;
+    }
+
+    /*
+     Fills out (FEATURE_COUNT long) with the board's features and
+     returns it. Transitions count changes between filled and empty
+     along each row and up each column, with the side walls and the
+     floor counted as filled and the space above the stack as empty.
+    */
+    public static double[] features(Board board, double[] out) {
+        final int width = board.getWidth();
+        final int maxHeight = board.getMaxHeight();
+
+        int rowTransitions = 0;
+        int columnTransitions = 0;
+        for (int y = 0; y < maxHeight; y++) {
+            boolean left = true;    // the left wall
+            for (int x = 0; x < width; x++) {
+                boolean filled = board.getGrid(x, y);
+                if (filled != left) rowTransitions++;
+                if (filled != board.getGrid(x, y - 1)) columnTransitions++;    // y = -1 is the floor
+                if (filled && y == maxHeight - 1) columnTransitions++;    // and the empty space above
+                left = filled;
+            }
+            if (!left) rowTransitions++;    // the right wall
+        }
+
+        out[MAX_HEIGHT] = maxHeight;
+        out[AVG_HEIGHT] = ((double)board.getTotalHeight())/width;
+        out[HOLES] = board.getHoles();
+        out[BUMPINESS] = board.getBumpiness();
+        out[ROW_TRANSITIONS] = rowTransitions;
+        out[COLUMN_TRANSITIONS] = columnTransitions;
+        out[WELLS] = board.getTotalWellDepth();
+        out[ROWS_CLEARED] = board.getLastRowsCleared();
+        out[LANDING_HEIGHT] = board.getLastPlaceY() + (board.getLastPlaceHeight() - 1) / 2.0;
+        return out;
+    }
+
+    public static double[] loadWeights(String name) {
+        File file = new File(name);
+        try (InputStream in = file.isFile() ? new FileInputStream(file) : FeatureBrain.class.getResourceAsStream(name)) {
+            if (in == null) throw new RuntimeException("Could not find weight file: " + name);
+            return loadWeights(new InputStreamReader(in, "UTF-8"));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read weight file: " + name, e);
+        }
+    }
+
+    public static double[] loadWeights(Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+
+        double[] loaded = DEFAULT_WEIGHTS.clone();
+        List<String> names = Arrays.asList(FEATURE_NAMES);
+        for (String key : properties.stringPropertyNames()) {
+            int feature = names.indexOf(key);
+            if (feature < 0) throw new RuntimeException("Unknown feature: " + key);
+            try {
+                loaded[feature] = Double.parseDouble(properties.getProperty(key).trim());
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Could not parse weight for " + key + ": " + properties.getProperty(key));
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,77 @@
+import java.io.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FeatureBrainTest {
+
+	private Piece[] pieces;
+	private double[] features;
+
+	@BeforeEach
+	protected void setUp() {
+		pieces = Piece.getPieces();
+		features = new double[FeatureBrain.FEATURE_COUNT];
+	}
+
+	@Test
+	public void featuresTest() {
+		Board board = new Board(4, 6);
+		board.place(new Piece("0 0  1 0"), 0, 0);
+		board.commit();
+		board.place(new Piece("0 0"), 3, 1);
+		board.commit();
+
+		assertSame(features, FeatureBrain.features(board, features));
+		assertEquals(2, features[FeatureBrain.MAX_HEIGHT]);
+		assertEquals(1, features[FeatureBrain.AVG_HEIGHT]);
+		assertEquals(1, features[FeatureBrain.HOLES]);
+		assertEquals(3, features[FeatureBrain.BUMPINESS]);
+		assertEquals(4, features[FeatureBrain.ROW_TRANSITIONS]);
+		assertEquals(6, features[FeatureBrain.COLUMN_TRANSITIONS]);
+		assertEquals(1, features[FeatureBrain.WELLS]);
+		assertEquals(0, features[FeatureBrain.ROWS_CLEARED]);
+		assertEquals(1, features[FeatureBrain.LANDING_HEIGHT]);
+
+		board.place(new Piece("0 0  1 0  0 1  0 2"), 2, 0);
+		board.clearRows();
+		FeatureBrain.features(board, features);
+		assertEquals(1, features[FeatureBrain.ROWS_CLEARED]);
+		assertEquals(1, features[FeatureBrain.LANDING_HEIGHT]);
+	}
+
+	@Test
+	public void defaultWeightsTest() {
+		DefaultBrain plain = new DefaultBrain();
+		FeatureBrain feature = new FeatureBrain();
+		Board board = new Board(10, 24);
+		Random random = new Random(24);
+		for (int i = 0; i < 40; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			Brain.Move expected = plain.bestMove(board, piece, 20, null);
+			Brain.Move actual = feature.bestMove(board, piece, 20, null);
+			assertSame(expected.piece, actual.piece);
+			assertEquals(expected.x, actual.x);
+			assertEquals(expected.score, actual.score);
+
+			board.place(expected.piece, expected.x, expected.y);
+			board.clearRows();
+			board.commit();
+		}
+	}
+
+	@Test
+	public void loadWeightsTest() throws IOException {
+		double[] weights = FeatureBrain.loadWeights(new StringReader("# tuned\nholes = 2\nwells=0.5\n"));
+		assertEquals(2, weights[FeatureBrain.HOLES]);
+		assertEquals(0.5, weights[FeatureBrain.WELLS]);
+		assertEquals(8, weights[FeatureBrain.MAX_HEIGHT]);
+		assertArrayEquals(weights, new FeatureBrain(weights).getWeights());
+
+		assertThrows(RuntimeException.class, () -> FeatureBrain.loadWeights(new StringReader("height = 1\n")));
+		assertThrows(RuntimeException.class, () -> FeatureBrain.loadWeights(new StringReader("holes = lots\n")));
+		assertThrows(RuntimeException.class, () -> new FeatureBrain(new double[3]));
+	}
+
+}
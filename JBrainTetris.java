@@ -3,25 +3,38 @@ import javax.swing.*;
 
 public class JBrainTetris extends JTetris {
 
+    public static final int MIN_THINK_MILLIS = 5;
+
     private int count;
     private JSlider adversary;
     private JCheckBox brainMode;
     private Brain.Move brainMove;
     private JLabel adversaryStatus;
     private JCheckBox animateFalling;
+    private JCheckBox lookahead;
     private DefaultBrain defaultBrain;
+    private LookaheadBrain lookaheadBrain;
+    private TranspositionTable table;
 
     JBrainTetris(int pixels) {
         super(pixels);
-        defaultBrain = new DefaultBrain();
+        // nextPiece() and tick() keep asking about the same boards
+        table = new TranspositionTable(16);
+        // -Dbrain.weights=<file or resource> rates boards with a FeatureBrain
+        String weightFile = System.getProperty("brain.weights");
+        DefaultBrain rater = (weightFile == null) ? new DefaultBrain() : new FeatureBrain(weightFile);
+        defaultBrain = new CachingBrain(rater, table);
+        lookaheadBrain = new LookaheadBrain(defaultBrain, 8, PREVIEW_SIZE);
     }
 
+    // The adversary swaps out the queued piece when it comes up, so it plays against the board as it is now
     @Override
-    public Piece pickNextPiece() {
+    public Piece nextPiece() {
+        Piece queued = super.nextPiece();
         int randNum = random.nextInt(100);
         if (randNum >= adversary.getValue()) {
             adversaryStatus.setText("ok");
-            return super.pickNextPiece();
+            return queued;
         }
 
         Piece worstPiece = pieces[0];
@@ -44,7 +57,14 @@ public class JBrainTetris extends JTetris {
             if (count != super.count) {
                 board.undo();
                 count = super.count;
-                brainMove = defaultBrain.bestMove(board, currentPiece, board.getHeight(), brainMove);
+                table.nextAge();
+                if (lookahead.isSelected()) {
+                    // Think for at most half a tick, so fast speeds don't stall the timer
+                    long budget = Math.max(timer.getDelay() / 2, MIN_THINK_MILLIS) * 1000000L;
+                    brainMove = lookaheadBrain.bestMove(board, currentPiece, preview, board.getHeight(), brainMove, System.nanoTime() + budget);
+                } else {
+                    brainMove = defaultBrain.bestMove(board, currentPiece, board.getHeight(), brainMove);
+                }
             }
             if (brainMove != null) {
                 if (!currentPiece.equals(brainMove.piece)) {
@@ -77,6 +97,10 @@ public class JBrainTetris extends JTetris {
         animateFalling.setSelected(true);
         panel.add(animateFalling);
 
+        lookahead = new JCheckBox("Use preview");
+        lookahead.setSelected(false);
+        panel.add(lookahead);
+
         JPanel little = new JPanel();
 
         little.add(new JLabel("Adversary:"));
@@ -57,6 +57,15 @@ public class JTetris extends JComponent {
 	protected Board board;
 	protected Piece[] pieces;
 	
+	// Upcoming pieces, next one first, kept PREVIEW_SIZE long by nextPiece()
+	public static final int PREVIEW_SIZE = 3;
+	protected ArrayDeque<Piece> preview = new ArrayDeque<>();
+	
+	// Board epoch as of the last repaintDirty(), and scratch sets for it
+	protected long paintedEpoch;
+	private BitSet dirtyRows = new BitSet();
+	private BitSet dirtyColumns = new BitSet();
+	
 	
 	// The current piece in play or null
 	protected Piece currentPiece;
@@ -105,7 +114,9 @@ public class JTetris extends JComponent {
 				(HEIGHT+TOP_SPACE)*pixels+2));
 		gameOn = false;
 		
-		pieces = Piece.getPieces();
+		// -Dtetris.pieces=<file or resource> swaps in a custom piece set
+		String pieceFile = System.getProperty("tetris.pieces");
+		pieces = (pieceFile == null) ? Piece.getPieces() : Piece.loadPieces(pieceFile);
 		board = new Board(WIDTH, HEIGHT + TOP_SPACE);
 
 
@@ -206,6 +217,7 @@ public class JTetris extends JComponent {
 	public void startGame() {
 		// cheap way to reset the board state
 		board = new Board(WIDTH, HEIGHT + TOP_SPACE);
+		paintedEpoch = board.getEpoch();
 		
 		// draw the new board state once
 		repaint();
@@ -223,6 +235,7 @@ public class JTetris extends JComponent {
 		
 		enableButtons();
 		timeLabel.setText(" ");
+		preview.clear();
 		addNewPiece();
 		timer.start();
 		startTime = System.currentTimeMillis();
@@ -265,13 +278,11 @@ public class JTetris extends JComponent {
 		int result = board.place(piece, x, y);
 		
 		if (result <= Board.PLACE_ROW_FILLED) { // SUCESS
-			// repaint the rect where it used to be
-			if (currentPiece != null) repaintPiece(currentPiece, currentX, currentY);
 			currentPiece = piece;
 			currentX = x;
 			currentY = y;
-			// repaint the rect where it is now
-			repaintPiece(currentPiece, currentX, currentY);
+			// repaint the rect covering where it used to be and where it is now
+			repaintDirty();
 		}
 		else {
 			board.undo();
@@ -295,6 +306,22 @@ public class JTetris extends JComponent {
 		return(piece);
 	}
 	
+	
+	/**
+	 Takes the next piece off the front of the preview queue,
+	 topping the queue up with pickNextPiece() so that
+	 PREVIEW_SIZE pieces are always known ahead of time.
+	 pickNextPiece() runs PREVIEW_SIZE pieces early, so a
+	 choice that depends on the board belongs in an override
+	 of this method instead.
+	*/
+	public Piece nextPiece() {
+		while (preview.size() <= PREVIEW_SIZE) {
+			preview.addLast(pickNextPiece());
+		}
+		return(preview.pollFirst());
+	}
+	
 			
 	/**
 	 Tries to add a new random piece at the top of the board.
@@ -313,7 +340,7 @@ public class JTetris extends JComponent {
 		board.commit();
 		currentPiece = null;
 
-		Piece piece = pickNextPiece();
+		Piece piece = nextPiece();
 		
 		// Center it up at the top
 		int px = (board.getWidth() - piece.getWidth())/2;
@@ -439,7 +466,7 @@ public class JTetris extends JComponent {
 		// if it didn't work, put it back the way it was
 		if (failed) {
 			if (currentPiece != null) board.place(currentPiece, currentX, currentY);
-			repaintPiece(currentPiece, currentX, currentY);
+			repaintDirty();
 		}
 		
 		/*
@@ -463,7 +490,7 @@ public class JTetris extends JComponent {
 					default: score += 50;  // could happen with non-standard pieces
 				}
 				updateCounters();
-				repaint();	// repaint to show the result of the row clearing
+				repaintDirty();	// repaint to show the result of the row clearing
 			}
 			
 			
@@ -505,6 +532,32 @@ public class JTetris extends JComponent {
 	}
 	
 	
+	/**
+	 Generates a repaint for the rectangle enclosing every row and
+	 column the board has changed since the last call -- the board
+	 tracks this itself, so nothing has to be guessed here.
+	*/
+	public void repaintDirty() {
+		if (DRAW_OPTIMIZE) {
+			board.getDirtyRows(paintedEpoch, dirtyRows);
+			board.getDirtyColumns(paintedEpoch, dirtyColumns);
+			
+			if (!dirtyRows.isEmpty() && !dirtyColumns.isEmpty()) {
+				int px = xPixel(dirtyColumns.nextSetBit(0));
+				int py = yPixel(dirtyRows.length() - 1);
+				int pwidth = xPixel(dirtyColumns.length()) - px;
+				int pheight = yPixel(dirtyRows.nextSetBit(0) - 1) - py;
+				
+				repaint(px, py, pwidth, pheight);
+			}
+		}
+		else {
+			repaint();
+		}
+		paintedEpoch = board.getEpoch();
+	}
+	
+	
 	/*
 	 Pixel helpers.
 	 These centralize the translation of (x,y) coords
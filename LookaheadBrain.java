@@ -0,0 +1,241 @@
+import java.util.*;
+
+/**
+ A brain that looks at the upcoming pieces too.
+ bestMove() runs a beam search: it drops the current piece
+ every way DefaultBrain would, keeps the beamWidth best boards
+ by rateBoard(), plays the first preview piece every way on
+ each of those, keeps the best beamWidth again, and so on for
+ up to depth preview pieces. The play returned is the first
+ play on the path to the best board at the last level.
+
+ Wider and deeper beams play better and cost more, about
+ beamWidth * depth times a DefaultBrain call, so both can be
+ changed between calls. Boards come from a BoardPool; one
+ LookaheadBrain should be used by one thread at a time.
+
+ A level's beam does not depend on how many levels follow it, so
+ every finished level is already the answer for that depth. Given
+ a deadline, the search stops in whatever level it runs out of
+ time in and answers from the level before, marked incomplete.
+*/
+public class LookaheadBrain implements AnytimeBrain {
+    private final DefaultBrain rater;
+    private int beamWidth;
+    private int depth;
+
+    private BoardPool boardPool;
+
+    // One board in the beam and the first play that led to it
+    private static class Node {
+        Board board;
+        Piece piece;
+        int x;
+        int y;
+        double score;
+    }
+
+    private Node[] beam = new Node[0];
+    private Node[] nextBeam = new Node[0];
+    private int beamSize;
+
+    // The plays kept so far at the current level, best first
+    private double[] keptScore;
+    private int[] keptParent;
+    private Piece[] keptPiece;
+    private int[] keptX;
+    private int[] keptY;
+    private int keptCount;
+
+    private Piece[] sequence = new Piece[0];
+    private int[] drops = new int[0];
+
+    public LookaheadBrain(int beamWidth, int depth) {
+        this(new DefaultBrain(), beamWidth, depth);
+    }
+
+    // rater's rateBoard() scores the boards at every level
+    public LookaheadBrain(DefaultBrain rater, int beamWidth, int depth) {
+        this.rater = rater;
+        setBeamWidth(beamWidth);
+        setDepth(depth);
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    public void setBeamWidth(int beamWidth) {
+        if (beamWidth < 1) throw new RuntimeException("Beam width must be at least 1!");
+        this.beamWidth = beamWidth;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    // How many preview pieces to look at, past the current one
+    public void setDepth(int depth) {
+        if (depth < 0) throw new RuntimeException("Depth must not be negative!");
+        this.depth = depth;
+    }
+
+    /**
+     With no preview this is a beam of depth 0, the same play
+     DefaultBrain would pick with the same rater.
+    */
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+        return bestMove(board, piece, Collections.<Piece>emptyList(), limitHeight, move, NO_DEADLINE);
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move, long deadline) {
+        return bestMove(board, piece, Collections.<Piece>emptyList(), limitHeight, move, deadline);
+    }
+
+    /**
+     Like bestMove() above, but also plays up to depth pieces
+     of preview, in order, after piece.
+    */
+    public Brain.Move bestMove(Board board, Piece piece, Collection<Piece> preview, int limitHeight, Brain.Move move) {
+        return bestMove(board, piece, preview, limitHeight, move, NO_DEADLINE);
+    }
+
+    public Brain.Move bestMove(Board board, Piece piece, Collection<Piece> preview, int limitHeight, Brain.Move move, long deadline) {
+        board.commit();
+        setUpScratch(board);
+
+        int levels = 1 + Math.min(depth, preview.size());
+        sequence[0] = piece;
+        Iterator<Piece> upcoming = preview.iterator();
+        for (int level = 1; level < levels; level++) sequence[level] = upcoming.next();
+
+        beam[0].board = board;
+        beam[0].piece = null;
+        beamSize = 1;
+
+        boolean complete = true;
+        for (int level = 0; level < levels; level++) {
+            keptCount = 0;
+            for (int parent = 0; parent < beamSize && complete; parent++) {
+                // The first level always finishes, so there is always an answer
+                if (level > 0 && timeUp(deadline)) complete = false;
+                else expand(parent, sequence[level], limitHeight);
+            }
+            if (!complete) break;
+            if (keptCount == 0) {
+                if (level == 0) {
+                    beam[0].board = null;
+                    return(null);    // could not find a play at all!
+                }
+                break;    // every line dies here, so go with the best of the last level
+            }
+
+            for (int i = 0; i < keptCount; i++) {
+                Node parent = beam[keptParent[i]];
+                Node child = nextBeam[i];
+                child.board = boardPool.acquireCopy(parent.board);
+                if (child.board.place(keptPiece[i], keptX[i], keptY[i]) == Board.PLACE_ROW_FILLED) child.board.clearRows();
+                child.board.commit();
+                child.piece = (level == 0) ? keptPiece[i] : parent.piece;
+                child.x = (level == 0) ? keptX[i] : parent.x;
+                child.y = (level == 0) ? keptY[i] : parent.y;
+                child.score = keptScore[i];
+            }
+            if (level > 0) releaseBeam();
+
+            Node[] temp = beam;
+            beam = nextBeam;
+            nextBeam = temp;
+            beamSize = keptCount;
+        }
+
+        if (move==null) move = new Brain.Move();
+        move.piece = beam[0].piece;
+        move.x = beam[0].x;
+        move.y = beam[0].y;
+        move.score = beam[0].score;
+        move.complete = complete;
+        releaseBeam();
+        return(move);
+    }
+
+    private static boolean timeUp(long deadline) {
+        return (deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0);
+    }
+
+    // Tries every drop of piece on one beam board, keeping the good ones
+    private void expand(int parent, Piece piece, int limitHeight) {
+        Board board = beam[parent].board;
+        Piece current = piece;
+        do {
+            final int yBound = limitHeight - current.getHeight()+1;
+            final int xBound = board.dropHeights(current, drops);
+            for (int x = 0; x<xBound; x++) {
+                int y = drops[x];
+                if (y<yBound) {
+                    int result = board.place(current, x, y);
+                    if (result <= Board.PLACE_ROW_FILLED) {
+                        if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+                        keep(rater.rateBoard(board), parent, current, x, y);
+                    }
+                    board.undo();
+                }
+            }
+            current = current.fastRotation();
+        } while (current != null && current != piece);
+    }
+
+    // Insertion into the best-first kept list; on a tie the play found first stays ahead
+    private void keep(double score, int parent, Piece piece, int x, int y) {
+        if (keptCount == beamWidth && score >= keptScore[keptCount - 1]) return;
+
+        int i = (keptCount < beamWidth) ? keptCount++ : keptCount - 1;
+        while (i > 0 && score < keptScore[i - 1]) {
+            keptScore[i] = keptScore[i - 1];
+            keptParent[i] = keptParent[i - 1];
+            keptPiece[i] = keptPiece[i - 1];
+            keptX[i] = keptX[i - 1];
+            keptY[i] = keptY[i - 1];
+            i--;
+        }
+        keptScore[i] = score;
+        keptParent[i] = parent;
+        keptPiece[i] = piece;
+        keptX[i] = x;
+        keptY[i] = y;
+    }
+
+    private void releaseBeam() {
+        for (int i = 0; i < beamSize; i++) {
+            boardPool.release(beam[i].board);
+            beam[i].board = null;
+        }
+        beamSize = 0;
+    }
+
+    private void setUpScratch(Board board) {
+        if (boardPool == null || boardPool.getWidth() != board.getWidth() || boardPool.getHeight() != board.getHeight()) {
+            boardPool = new BoardPool(board.getWidth(), board.getHeight());
+        }
+        if (drops.length < board.getWidth()) drops = new int[board.getWidth()];
+        if (sequence.length < depth + 1) sequence = new Piece[depth + 1];
+
+        if (beam.length < beamWidth) {
+            beam = growNodes(beam, beamWidth);
+            nextBeam = growNodes(nextBeam, beamWidth);
+        }
+        if (keptScore == null || keptScore.length < beamWidth) {
+            keptScore = new double[beamWidth];
+            keptParent = new int[beamWidth];
+            keptPiece = new Piece[beamWidth];
+            keptX = new int[beamWidth];
+            keptY = new int[beamWidth];
+        }
+    }
+
+    private static Node[] growNodes(Node[] nodes, int size) {
+        Node[] grown = Arrays.copyOf(nodes, size);
+        for (int i = nodes.length; i < size; i++) grown[i] = new Node();
+        return grown;
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LookaheadBrainTest {
+
+	private Piece[] pieces;
+	private Random random;
+
+	@BeforeEach
+	protected void setUp() {
+		pieces = Piece.getPieces();
+		random = new Random(20);
+	}
+
+	@Test
+	public void noPreviewTest() {
+		DefaultBrain serial = new DefaultBrain();
+		LookaheadBrain lookahead = new LookaheadBrain(4, 2);
+		Board board = new Board(10, 24);
+		for (int i = 0; i < 40; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			Brain.Move expected = serial.bestMove(board, piece, 20, null);
+			Brain.Move actual = lookahead.bestMove(board, piece, 20, null);
+			assertSame(expected.piece, actual.piece);
+			assertEquals(expected.x, actual.x);
+			assertEquals(expected.y, actual.y);
+			assertEquals(expected.score, actual.score);
+
+			board.place(expected.piece, expected.x, expected.y);
+			board.clearRows();
+			board.commit();
+		}
+	}
+
+	@Test
+	public void previewTest() {
+		LookaheadBrain lookahead = new LookaheadBrain(6, 3);
+		Board board = new Board(10, 24);
+		ArrayDeque<Piece> preview = new ArrayDeque<>();
+		for (int i = 0; i < 3; i++) preview.add(pieces[random.nextInt(pieces.length)]);
+
+		int placed = 0;
+		for (; placed < 200; placed++) {
+			Piece piece = preview.pollFirst();
+			preview.addLast(pieces[random.nextInt(pieces.length)]);
+			String before = board.toString();
+			Brain.Move move = lookahead.bestMove(board, piece, preview, 20, null);
+			assertEquals(before, board.toString());
+			if (move == null) break;
+
+			assertTrue(board.place(move.piece, move.x, move.y) <= Board.PLACE_ROW_FILLED);
+			board.clearRows();
+			board.commit();
+			if (board.getMaxHeight() > 20) break;
+		}
+		assertEquals(200, placed);
+	}
+
+	@Test
+	public void configTest() {
+		LookaheadBrain lookahead = new LookaheadBrain(1, 0);
+		assertThrows(RuntimeException.class, () -> lookahead.setBeamWidth(0));
+		assertThrows(RuntimeException.class, () -> lookahead.setDepth(-1));
+		lookahead.setBeamWidth(3);
+		lookahead.setDepth(5);
+		assertEquals(3, lookahead.getBeamWidth());
+		assertEquals(5, lookahead.getDepth());
+
+		// Fewer preview pieces than the depth is fine
+		Board board = new Board(6, 8);
+		assertNotNull(lookahead.bestMove(board, pieces[Piece.L1], List.of(pieces[Piece.STICK]), 6, null));
+		assertNull(lookahead.bestMove(new Board(3, 4), pieces[Piece.STICK], List.of(pieces[Piece.SQUARE]), 2, null));
+	}
+
+	@Test
+	public void deadlineTest() {
+		LookaheadBrain lookahead = new LookaheadBrain(4, 2);
+		Board board = new Board(10, 24);
+		List<Piece> preview = List.of(pieces[Piece.STICK], pieces[Piece.S1]);
+
+		Brain.Move full = lookahead.bestMove(board, pieces[Piece.L1], preview, 20, null, AnytimeBrain.NO_DEADLINE);
+		assertTrue(full.complete);
+
+		// Already past the deadline: only the first level is searched
+		Brain.Move late = lookahead.bestMove(board, pieces[Piece.L1], preview, 20, full, System.nanoTime() - 1);
+		assertSame(full, late);
+		assertFalse(late.complete);
+		Brain.Move shallow = new DefaultBrain().bestMove(board, pieces[Piece.L1], 20, null);
+		assertSame(shallow.piece, late.piece);
+		assertEquals(shallow.x, late.x);
+		assertEquals(shallow.score, late.score);
+
+		assertTrue(lookahead.bestMove(board, pieces[Piece.L1], 20, null, System.nanoTime() - 1).complete);
+	}
+
+}
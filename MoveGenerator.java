@@ -0,0 +1,157 @@
+import java.util.*;
+
+/*
+ Finds every resting place a piece can reach on a board by moving left,
+ right, down and rotating the way JTetris does, so slides and tucks under
+ overhangs are included, not just drops from above. A resting place is a
+ position where the piece fits and cannot move down.
+
+ Moves come out as packed ints -- rotation << 24 | x << 12 | y, with
+ rotation counted in fastRotation() steps from the piece passed in -- in
+ an array the generator reuses, so a call allocates nothing once the
+ arrays have grown to the board. Keep one generator per thread (or per
+ search depth, since the next generate() overwrites the moves).
+*/
+public class MoveGenerator {
+
+	private static final int MAX_COORD = (1 << 12) - 1;
+
+	private Piece[] ring = new Piece[4];
+	private int ringSize;
+
+	private int[] visited = new int[0];		// stamp per (rotation, x, y) state
+	private int stamp;
+	private int[] queue = new int[0];
+	private int[] moves = new int[16];
+
+	private Board board;
+	private int width;
+	private int height;
+	private int maxHeight;
+
+	public static int pack(int rotation, int x, int y) {
+		return (rotation << 24) | (x << 12) | y;
+	}
+
+	public static int rotation(int move) {
+		return move >>> 24;
+	}
+
+	public static int x(int move) {
+		return (move >>> 12) & MAX_COORD;
+	}
+
+	public static int y(int move) {
+		return move & MAX_COORD;
+	}
+
+	/*
+	 Fills getMoves() with every resting place for the piece and returns
+	 how many there are. Each (rotation, x, y) shows up at most once.
+	 The board is only read.
+	*/
+	public int generate(Board board, Piece piece) {
+		this.board = board;
+		width = board.getWidth();
+		height = board.getHeight();
+		maxHeight = board.getMaxHeight();
+		if (width > MAX_COORD || height > MAX_COORD) throw new RuntimeException("Board too large for packed moves!");
+
+		ringSize = 0;
+		Piece current = piece;
+		do {
+			if (ringSize == ring.length) ring = Arrays.copyOf(ring, ringSize * 2);
+			ring[ringSize++] = current;
+			current = current.fastRotation();
+		} while (current != null && current != piece);
+
+		int states = ringSize * width * height;
+		if (visited.length < states) {
+			visited = new int[states];
+			queue = new int[states];
+			stamp = 0;
+		}
+		if (++stamp == 0) {
+			Arrays.fill(visited, 0);
+			stamp = 1;
+		}
+
+		int head = 0;
+		int tail = 0;
+		int spawnX = (width - piece.getWidth()) / 2;
+		int spawnY = height - piece.getHeight();
+		if (!fits(0, spawnX, spawnY)) return 0;
+
+		// The rows above the stack are empty, so when every rotation fits up
+		// there every (rotation, x) is reachable and the search can start at
+		// maxHeight instead of walking down from the spawn point
+		boolean clearAbove = true;
+		for (int r = 0; r < ringSize; r++) {
+			if (maxHeight + ring[r].getHeight() > height) clearAbove = false;
+		}
+		if (clearAbove) {
+			for (int r = 0; r < ringSize; r++) {
+				for (int x = 0; x + ring[r].getWidth() <= width; x++) {
+					tail = visit(r, x, maxHeight, tail);
+				}
+			}
+		} else {
+			tail = visit(0, spawnX, spawnY, tail);
+		}
+
+		int count = 0;
+		while (head < tail) {
+			int state = queue[head++];
+			int y = state % height;
+			int x = (state / height) % width;
+			int r = state / height / width;
+
+			if (fits(r, x, y - 1)) {
+				tail = visit(r, x, y - 1, tail);
+			} else {
+				if (count == moves.length) moves = Arrays.copyOf(moves, count * 2);
+				moves[count++] = pack(r, x, y);
+			}
+			if (fits(r, x - 1, y)) tail = visit(r, x - 1, y, tail);
+			if (fits(r, x + 1, y)) tail = visit(r, x + 1, y, tail);
+
+			// Same centering as JTetris.computeNewPosition()
+			int nextR = (r + 1 == ringSize) ? 0 : r + 1;
+			int nextX = x + (ring[r].getWidth() - ring[nextR].getWidth()) / 2;
+			int nextY = y + (ring[r].getHeight() - ring[nextR].getHeight()) / 2;
+			if (fits(nextR, nextX, nextY)) tail = visit(nextR, nextX, nextY, tail);
+		}
+
+		this.board = null;
+		return count;
+	}
+
+	public int[] getMoves() {
+		return moves;
+	}
+
+	// The rotation of the last generate()'s piece that a move refers to
+	public Piece getPiece(int move) {
+		return ring[rotation(move)];
+	}
+
+	private int visit(int r, int x, int y, int tail) {
+		int state = (r * width + x) * height + y;
+		if (visited[state] != stamp) {
+			visited[state] = stamp;
+			queue[tail++] = state;
+		}
+		return tail;
+	}
+
+	private boolean fits(int r, int x, int y) {
+		Piece piece = ring[r];
+		if (x < 0 || y < 0 || x + piece.getWidth() > width || y + piece.getHeight() > height) return false;
+		if (y >= maxHeight) return true;
+		for (TPoint tp : piece.getBody()) {
+			if (board.getGrid(tp.x + x, tp.y + y)) return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,73 @@
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoveGeneratorTest {
+
+	private Board board;
+	private MoveGenerator generator;
+	private Piece[] pieces;
+
+	@BeforeEach
+	protected void setUp() {
+		board = new Board(6, 8);
+		generator = new MoveGenerator();
+		pieces = Piece.getPieces();
+	}
+
+	private Set<Integer> generate(Piece piece) {
+		int count = generator.generate(board, piece);
+		Set<Integer> moves = new HashSet<>();
+		for (int i = 0; i < count; i++) moves.add(generator.getMoves()[i]);
+		assertEquals(count, moves.size());
+		return moves;
+	}
+
+	@Test
+	public void packTest() {
+		int move = MoveGenerator.pack(3, 17, 21);
+		assertEquals(3, MoveGenerator.rotation(move));
+		assertEquals(17, MoveGenerator.x(move));
+		assertEquals(21, MoveGenerator.y(move));
+	}
+
+	@Test
+	public void emptyBoardTest() {
+		Set<Integer> moves = generate(pieces[Piece.L1]);
+		assertEquals(5 + 4 + 5 + 4, moves.size());
+		for (int move : moves) {
+			assertEquals(0, MoveGenerator.y(move));
+			Piece piece = generator.getPiece(move);
+			assertEquals(Board.PLACE_OK, board.place(piece, MoveGenerator.x(move), 0));
+			board.undo();
+		}
+		assertEquals(5, generate(pieces[Piece.SQUARE]).size());
+	}
+
+	@Test
+	public void tuckTest() {
+		board.place(new Piece("0 0  1 0  2 0  3 0"), 2, 2);
+		board.commit();
+
+		Set<Integer> moves = generate(pieces[Piece.SQUARE]);
+		assertTrue(moves.contains(MoveGenerator.pack(0, 4, 0)));
+		assertTrue(moves.contains(MoveGenerator.pack(0, 2, 3)));
+		assertEquals(3, board.dropHeight(pieces[Piece.SQUARE], 4));
+
+		// Closing the gap at the left leaves the space under the roof unreachable
+		board.place(new Piece("0 0  0 1  0 2  1 2"), 0, 0);
+		board.commit();
+		moves = generate(pieces[Piece.SQUARE]);
+		for (int move : moves) assertEquals(3, MoveGenerator.y(move));
+	}
+
+	@Test
+	public void fullBoardTest() {
+		Board tall = new Board(4, 4);
+		tall.place(new Piece("0 0  1 0  2 0  3 0"), 0, 3);
+		tall.commit();
+		assertEquals(0, generator.generate(tall, pieces[Piece.STICK]));
+	}
+
+}
@@ -0,0 +1,148 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ A DefaultBrain that rates its candidate plays in parallel.
+ bestMove() lists the same (rotation, x) drops DefaultBrain
+ tries, in the same order, then splits the list across a
+ ForkJoinPool. Each leaf task plays its share on its own copy
+ of the board, taken from a BoardPool, so rateBoard() only has
+ to be safe to call from several threads on different boards.
+
+ The best plays from the halves are combined by score, and on a
+ tie the one earlier in the list wins, which is the play the
+ serial loop would have kept -- the answer does not depend on
+ how the work was split or scheduled.
+*/
+public class ParallelBrain extends DefaultBrain {
+    private final ForkJoinPool forkJoinPool;
+    private volatile BoardPool boardPool;
+
+    public ParallelBrain() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelBrain(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    // The winning play of a range of candidates
+    private static class Best {
+        int index = -1;
+        double score = 1e20;
+    }
+
+    @Override
+    public Brain.Move bestMove(Board board, Piece piece, int limitHeight, Brain.Move move) {
+        if (move==null) move = new Brain.Move();
+
+        board.commit();
+
+        // List the candidates in the order DefaultBrain visits them
+        int width = board.getWidth();
+        List<Piece> rotations = new ArrayList<>();
+        Piece current = piece;
+        do {
+            rotations.add(current);
+            current = current.fastRotation();
+        } while (current != null && current != piece);
+
+        Piece[] candidatePieces = new Piece[rotations.size() * width];
+        int[] candidateX = new int[candidatePieces.length];
+        int[] candidateY = new int[candidatePieces.length];
+        int count = 0;
+        int[] drops = new int[width];
+        for (Piece rotation : rotations) {
+            final int yBound = limitHeight - rotation.getHeight()+1;
+            final int xBound = board.dropHeights(rotation, drops);
+            for (int x = 0; x<xBound; x++) {
+                if (drops[x]<yBound) {
+                    candidatePieces[count] = rotation;
+                    candidateX[count] = x;
+                    candidateY[count] = drops[x];
+                    count++;
+                }
+            }
+        }
+        if (count == 0) return(null);
+
+        BoardPool pool = boardPool;
+        if (pool == null || pool.getWidth() != width || pool.getHeight() != board.getHeight()) {
+            pool = new BoardPool(width, board.getHeight());
+            boardPool = pool;
+        }
+
+        // Split finely enough that an uneven rateBoard() still balances out
+        int grain = Math.max(1, count / (4 * forkJoinPool.getParallelism()));
+        Best best = forkJoinPool.invoke(new RateTask(board, pool, candidatePieces, candidateX, candidateY, 0, count, grain));
+
+        if (best.index < 0) return(null);    // could not find a play at all!
+        move.x = candidateX[best.index];
+        move.y = candidateY[best.index];
+        move.piece = candidatePieces[best.index];
+        move.score = best.score;
+        move.complete = true;
+        return(move);
+    }
+
+    private class RateTask extends RecursiveTask<Best> {
+        private static final long serialVersionUID = 1L;
+
+        private final Board board;
+        private final BoardPool pool;
+        private final Piece[] pieces;
+        private final int[] xs;
+        private final int[] ys;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        RateTask(Board board, BoardPool pool, Piece[] pieces, int[] xs, int[] ys, int from, int to, int grain) {
+            this.board = board;
+            this.pool = pool;
+            this.pieces = pieces;
+            this.xs = xs;
+            this.ys = ys;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Best compute() {
+            if (to - from > grain) {
+                int mid = (from + to) >>> 1;
+                RateTask low = new RateTask(board, pool, pieces, xs, ys, from, mid, grain);
+                RateTask high = new RateTask(board, pool, pieces, xs, ys, mid, to, grain);
+                low.fork();
+                Best highBest = high.compute();
+                Best lowBest = low.join();
+                // low covers the earlier candidates, so it keeps ties
+                return (highBest.score < lowBest.score) ? highBest : lowBest;
+            }
+
+            Best best = new Best();
+            Board copy = pool.acquireCopy(board);
+            try {
+                for (int i = from; i < to; i++) {
+                    int result = copy.place(pieces[i], xs[i], ys[i]);
+                    if (result <= Board.PLACE_ROW_FILLED) {
+                        if (result == Board.PLACE_ROW_FILLED) copy.clearRows();
+
+                        double score = rateBoard(copy);
+
+                        if (score<best.score) {
+                            best.score = score;
+                            best.index = i;
+                        }
+                    }
+
+                    copy.undo();
+                }
+            } finally {
+                pool.release(copy);
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelBrainTest {
+
+	private ForkJoinPool forkJoinPool;
+	private Piece[] pieces;
+
+	@BeforeEach
+	protected void setUp() {
+		forkJoinPool = new ForkJoinPool(4);
+		pieces = Piece.getPieces();
+	}
+
+	@AfterEach
+	protected void tearDown() {
+		forkJoinPool.shutdown();
+	}
+
+	private void assertSameMoves(DefaultBrain serial, DefaultBrain parallel) {
+		Board board = new Board(10, 24);
+		Random random = new Random(19);
+		for (int i = 0; i < 60; i++) {
+			Piece piece = pieces[random.nextInt(pieces.length)];
+			Brain.Move expected = serial.bestMove(board, piece, 20, null);
+			Brain.Move actual = parallel.bestMove(board, piece, 20, null);
+			if (expected == null) {
+				assertNull(actual);
+				return;
+			}
+			assertSame(expected.piece, actual.piece);
+			assertEquals(expected.x, actual.x);
+			assertEquals(expected.y, actual.y);
+			assertEquals(expected.score, actual.score);
+
+			board.place(expected.piece, expected.x, expected.y);
+			board.clearRows();
+			board.commit();
+		}
+	}
+
+	@Test
+	public void matchesDefaultBrainTest() {
+		assertSameMoves(new DefaultBrain(), new ParallelBrain(forkJoinPool));
+	}
+
+	@Test
+	public void tieBreakTest() {
+		// Every play rates the same, so both must keep the first one tried
+		assertSameMoves(new DefaultBrain() {
+			public double rateBoard(Board board) { return 1; }
+		}, new ParallelBrain(forkJoinPool) {
+			public double rateBoard(Board board) { return 1; }
+		});
+	}
+
+	@Test
+	public void noMoveTest() {
+		Board board = new Board(3, 4);
+		assertNull(new ParallelBrain(forkJoinPool).bestMove(board, pieces[Piece.STICK], 2, null));
+	}
+
+}
@@ -1,19 +1,40 @@
+import java.io.*;
 import java.util.*;
 
 public class Piece {
 
+	// Pieces that fit in MASK_SIZE x MASK_SIZE cells get a packed mask, bit (y * MASK_SIZE + x)
+	public static final int MASK_SIZE = 8;
+
 	private TPoint[] body;
 	private int[] skirt;
+	private int[] top;
+	private int[] rowCounts;
 	private int width;
 	private int height;
 	private Piece next;
 
-	static private Piece[] pieces;
+	private final long mask;
+	private final long[] rowMasks;
+
+	/*
+	 Identity comes from the cells alone, so it is the same in every run and
+	 nothing is kept per shape: pieces that fit a mask compare masks, larger
+	 ones their sorted points (bigKey, null otherwise). The id is a hash of
+	 that, shared by equal pieces and almost always different otherwise.
+	*/
+	private final String bigKey;
+	private final int id;
 
 	public Piece(TPoint[] points) {
 		body = Arrays.copyOf(points, points.length);
 		computeSizes();
 		createSkirt();
+		createTables();
+		mask = computeMask();
+		rowMasks = computeRowMasks();
+		bigKey = fitsMask() ? null : sortedPoints();
+		id = (bigKey == null) ? mixMask(mask) : bigKey.hashCode();
 	}
 
 	private void computeSizes() {
@@ -31,6 +52,58 @@ public class Piece {
 		}
 	}
 
+	// Per-column top (one past the highest cell, 0 if empty) and per-row cell counts
+	private void createTables() {
+		top = new int[width];
+		rowCounts = new int[height];
+		for (TPoint tp : body) {
+			top[tp.x] = Math.max(top[tp.x], tp.y + 1);
+			rowCounts[tp.y]++;
+		}
+	}
+
+	private boolean fitsMask() {
+		for (TPoint tp : body) {
+			if (tp.x < 0 || tp.x >= MASK_SIZE || tp.y < 0 || tp.y >= MASK_SIZE) return false;
+		}
+		return true;
+	}
+
+	private long computeMask() {
+		if (!fitsMask()) return 0;
+		long bits = 0;
+		for (TPoint tp : body) {
+			bits |= 1L << (tp.y * MASK_SIZE + tp.x);
+		}
+		return bits;
+	}
+
+	private long[] computeRowMasks() {
+		if (width > Long.SIZE) return null;
+		long[] masks = new long[height];
+		for (TPoint tp : body) {
+			masks[tp.y] |= 1L << tp.x;
+		}
+		return masks;
+	}
+
+	private static int mixMask(long mask) {
+		long bits = mask * 0x9e3779b97f4a7c15L;
+		return (int)(bits ^ (bits >>> 32));
+	}
+
+	private String sortedPoints() {
+		TPoint[] sorted = Arrays.copyOf(body, body.length);
+		Arrays.sort(sorted, (a, b) -> (a.y != b.y) ? Integer.compare(a.y, b.y) : Integer.compare(a.x, b.x));
+		StringBuilder key = new StringBuilder();
+		TPoint last = null;
+		for (TPoint tp : sorted) {
+			if (!tp.equals(last)) key.append(tp.x).append(' ').append(tp.y).append(' ');
+			last = tp;
+		}
+		return key.toString();
+	}
+
 	public Piece(String points) {
 		this(parsePoints(points));
 	}
@@ -51,6 +124,29 @@ public class Piece {
 		return skirt;
 	}
 
+	public int[] getTop() {
+		return top;
+	}
+
+	public int[] getRowCounts() {
+		return rowCounts;
+	}
+
+	// Same for every Piece with the same cells, in every run; a hash, not a unique number
+	public int getId() {
+		return id;
+	}
+
+	// Cells packed as bit (y * MASK_SIZE + x), or 0 if the piece does not fit in MASK_SIZE x MASK_SIZE
+	public long getMask() {
+		return mask;
+	}
+
+	// Bit x of entry y is set when (x, y) is in the body; null for pieces wider than 64
+	public long[] getRowMasks() {
+		return rowMasks;
+	}
+
 	public Piece computeNextRotation() {
 		TPoint[] rotatedPoints = new TPoint[body.length];
 		for (int i = 0; i < body.length; i++) {
@@ -72,14 +168,12 @@ public class Piece {
 
 	public boolean equals(Object obj) {
 		if (!(obj instanceof Piece)) return false;
-		if (obj == this) return true;
-
 		Piece other = (Piece)obj;
+		return (other.mask == mask && Objects.equals(other.bigKey, bigKey));
+	}
 
-		ArrayList<TPoint> body1 = new ArrayList<>(Arrays.asList(this.getBody()));
-		ArrayList<TPoint> body2 = new ArrayList<>(Arrays.asList(other.getBody()));
-
-		return (body1.containsAll(body2) && body2.containsAll(body1));
+	public int hashCode() {
+		return id;
 	}
 
 	public static final int STICK	= 0;
@@ -98,21 +192,62 @@ public class Piece {
 	public static final String SQUARE_STR	= "0 0  0 1  1 0  1 1";
 	public static final String PYRAMID_STR	= "0 0  1 0  1 1  2 0";
 
+	// Built once when the class loads, so every thread sees the same table
+	private static final Piece[] pieces = {
+		makeFastRotations(new Piece(STICK_STR)),
+		makeFastRotations(new Piece(L1_STR)),
+		makeFastRotations(new Piece(L2_STR)),
+		makeFastRotations(new Piece(S1_STR)),
+		makeFastRotations(new Piece(S2_STR)),
+		makeFastRotations(new Piece(SQUARE_STR)),
+		makeFastRotations(new Piece(PYRAMID_STR)),
+	};
+
 	public static Piece[] getPieces() {
-		if (Piece.pieces == null) {
-			Piece.pieces = new Piece[] {
-				makeFastRotations(new Piece(STICK_STR)),
-				makeFastRotations(new Piece(L1_STR)),
-				makeFastRotations(new Piece(L2_STR)),
-				makeFastRotations(new Piece(S1_STR)),
-				makeFastRotations(new Piece(S2_STR)),
-				makeFastRotations(new Piece(SQUARE_STR)),
-				makeFastRotations(new Piece(PYRAMID_STR)),
-			};
-		}
 		return Piece.pieces;
 	}
 
+	/*
+	 Loads a piece set, one piece per line in the same "x y x y ..." format
+	 as the strings above, from a file or else a classpath resource with
+	 that name. Blank lines and lines starting with '#' are skipped. Each
+	 piece is shifted to touch x = 0 and y = 0 and gets its rotation ring
+	 built, like the pieces from getPieces().
+	*/
+	public static Piece[] loadPieces(String name) {
+		File file = new File(name);
+		try (InputStream in = file.isFile() ? new FileInputStream(file) : Piece.class.getResourceAsStream(name)) {
+			if (in == null) throw new RuntimeException("Could not find piece file: " + name);
+			return loadPieces(new InputStreamReader(in, "UTF-8"));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read piece file: " + name, e);
+		}
+	}
+
+	public static Piece[] loadPieces(Reader reader) throws IOException {
+		List<Piece> loaded = new ArrayList<>();
+		BufferedReader in = new BufferedReader(reader);
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+
+			TPoint[] points = parsePoints(line);
+			int minX = Integer.MAX_VALUE;
+			int minY = Integer.MAX_VALUE;
+			for (TPoint tp : points) {
+				minX = Math.min(minX, tp.x);
+				minY = Math.min(minY, tp.y);
+			}
+			for (int i = 0; i < points.length; i++) {
+				points[i] = new TPoint(points[i].x - minX, points[i].y - minY);
+			}
+			loaded.add(makeFastRotations(new Piece(points)));
+		}
+		if (loaded.isEmpty()) throw new RuntimeException("No pieces found!");
+		return loaded.toArray(new Piece[0]);
+	}
+
 	private static Piece makeFastRotations(Piece root) {
 		Piece currRotation = root;
 		Piece nextRotation = root.computeNextRotation();
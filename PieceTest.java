@@ -1,3 +1,5 @@
+import java.io.*;
+
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -91,4 +93,59 @@ public class PieceTest {
 		assertTrue(l4.equals(l.fastRotation().fastRotation().fastRotation().fastRotation()));
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void idAndMaskTest() {
+		assertEquals(l0.getId(), l4.getId());
+		assertEquals(l0.hashCode(), l4.hashCode());
+		assertNotEquals(l0.getId(), l1.getId());
+		assertEquals(square0.getId(), pieces[Piece.SQUARE].getId());
+		assertEquals(l0, new Piece("1 0  0 2  0 1  0 0"));
+
+		assertEquals(0b0000_0011_0000_0011L, square0.getMask());
+		assertArrayEquals(new long[]{0b11, 0b01, 0b01}, l0.getRowMasks());
+		assertArrayEquals(new long[]{0b110, 0b011}, pieces[Piece.S2].getRowMasks());
+
+		Piece wide = new Piece("0 0  9 0");
+		assertEquals(0, wide.getMask());
+		assertEquals(wide, new Piece("9 0  0 0"));
+		assertNotEquals(wide, new Piece("0 0  8 0"));
+		assertEquals(wide.hashCode(), new Piece("9 0  0 0").hashCode());
+	}
+
+	@Test
+	public void idStableTest() {
+		// Ids depend only on the cells, not on which pieces were built first
+		long bits = 0b0000_0011_0000_0011L * 0x9e3779b97f4a7c15L;
+		assertEquals((int)(bits ^ (bits >>> 32)), square0.getId());
+		assertEquals(new Piece("0 0  1 0  0 1  1 1").getId(), square0.getId());
+	}
+
+	@Test
+	public void loadPiecesTest() throws IOException {
+		Piece[] loaded = Piece.loadPieces(new StringReader(
+				"# pentominoes\n" +
+				"0 0  0 1  0 2  0 3  0 4\n" +
+				"\n" +
+				"1 1  1 2  2 2  2 3  3 2\n"));
+		assertEquals(2, loaded.length);
+
+		Piece i = loaded[0];
+		assertEquals(5, i.getHeight());
+		assertEquals(i, i.fastRotation().fastRotation());
+		assertEquals(5, i.fastRotation().getWidth());
+
+		Piece f = loaded[1];
+		assertEquals(new Piece("0 0  0 1  1 1  1 2  2 1"), f);
+		assertArrayEquals(new int[]{0, 1, 1}, f.getSkirt());
+		assertArrayEquals(new int[]{2, 3, 2}, f.getTop());
+		assertArrayEquals(new int[]{1, 3, 1}, f.getRowCounts());
+
+		Piece rotation = f;
+		for (int r = 0; r < 4; r++) rotation = rotation.fastRotation();
+		assertSame(f, rotation);
+
+		assertThrows(RuntimeException.class, () -> Piece.loadPieces(new StringReader("# nothing\n")));
+		assertThrows(RuntimeException.class, () -> Piece.loadPieces("no-such-piece-file.txt"));
+	}
+
+}
@@ -36,6 +36,11 @@ public class TPoint {
 		return(x==pt.x && y==pt.y);
 	}
 
+	// Standard hashCode() override, to go with equals()
+	public int hashCode() {
+		return 31 * x + y;
+	}
+
 	// Standard toString() override, produce
 	// human-readable String from object
 	public String toString() {
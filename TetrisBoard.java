@@ -0,0 +1,38 @@
+// TetrisBoard.java -- the operations shared by every board implementation
+
+public interface TetrisBoard {
+
+	public static final int PLACE_OK		 = 0;
+	public static final int PLACE_ROW_FILLED = 1;
+	public static final int PLACE_OUT_BOUNDS = 2;
+	public static final int PLACE_BAD		 = 3;
+
+	public int getWidth();
+
+	public int getHeight();
+
+	public int getMaxHeight();
+
+	public void sanityCheck();
+
+	public int dropHeight(Piece piece, int x);
+
+	public int getColumnHeight(int x);
+
+	public int getRowWidth(int y);
+
+	public boolean getGrid(int x, int y);
+
+	public int place(Piece piece, int x, int y);
+
+	public int clearRows();
+
+	public void undo();
+
+	public void commit();
+
+	public void turnOnDebugMode();
+
+	public void turnOffDebugMode();
+
+}
@@ -0,0 +1,221 @@
+import java.util.concurrent.atomic.*;
+
+/*
+ A fixed-size cache of brain results keyed by 64-bit board hashes, so a
+ position that comes up again -- the same board rated for each of the
+ seven pieces, or reached twice in a search -- is not worked out again.
+ It holds two kinds of entry: a rateBoard() score for a board, and the
+ best move for a board, piece and limitHeight.
+
+ Slots come in buckets of two. A store goes to the slot already holding
+ its key, else an empty slot, else one left over from an earlier age
+ (see nextAge()), else the one searched to a lower depth; it is dropped
+ if both slots hold deeper results from the current age. Buckets are
+ guarded by a fixed set of striped locks, so one table can be shared by
+ all the search threads.
+*/
+public class TranspositionTable {
+
+	private static final int STRIPES = 64;
+
+	private final int mask;
+	private final long[] keys;
+	private final int[] ages;		// 0 marks an empty slot
+	private final int[] depths;
+	private final double[] scores;
+	private final Piece[] pieces;
+	private final int[] xs;
+	private final int[] ys;
+	private final Object[] locks;
+
+	private volatile int age = 1;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	// Holds 2^sizeLog2 entries
+	public TranspositionTable(int sizeLog2) {
+		if (sizeLog2 < 1 || sizeLog2 > 28) throw new RuntimeException("Table size must be between 2^1 and 2^28!");
+
+		int size = 1 << sizeLog2;
+		mask = size - 1;
+		keys = new long[size];
+		ages = new int[size];
+		depths = new int[size];
+		scores = new double[size];
+		pieces = new Piece[size];
+		xs = new int[size];
+		ys = new int[size];
+
+		locks = new Object[STRIPES];
+		for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+	}
+
+	public int getSize() {
+		return keys.length;
+	}
+
+	/*
+	 Key for board's rateBoard() score: the grid and, since a rater may
+	 also score the move that led there (FeatureBrain's rows cleared and
+	 landing height do), the board's record of its last place() and
+	 clearRows(). Raters must not depend on anything else.
+	*/
+	public static long scoreKey(Board board) {
+		long lastMove = board.getLastPlaceY() + ((long)board.getLastPlaceHeight() << 16) + ((long)board.getLastRowsCleared() << 32);
+		return mix(gridKey(board) + 0x9e3779b97f4a7c15L * (1 + lastMove));
+	}
+
+	/*
+	 Key for the best move of piece on board under limitHeight. Every
+	 candidate is rated after its own place(), so only the grid counts.
+	*/
+	public static long moveKey(Board board, Piece piece, int limitHeight) {
+		return mix(gridKey(board) + 0x9e3779b97f4a7c15L * (1 + piece.getId() + ((long)limitHeight << 32)));
+	}
+
+	private static long gridKey(Board board) {
+		return mix(board.getHash() ^ mix(board.getWidth() * 0x10001L + board.getHeight()));
+	}
+
+	/*
+	 Entries stored before this count as stale and are replaced first.
+	 Call it once per real move, so results for positions the game has
+	 moved past give way to the current search.
+	*/
+	public void nextAge() {
+		synchronized (locks[0]) {
+			age = (age == Integer.MAX_VALUE) ? 1 : age + 1;
+		}
+	}
+
+	// The stored score for key, or NaN if there is none
+	public double probeScore(long key) {
+		int slot = bucket(key);
+		synchronized (lockFor(slot)) {
+			for (int i = slot; i < slot + 2; i++) {
+				if (ages[i] != 0 && keys[i] == key) {
+					hits.incrementAndGet();
+					return scores[i];
+				}
+			}
+		}
+		misses.incrementAndGet();
+		return Double.NaN;
+	}
+
+	public void storeScore(long key, int depth, double score) {
+		store(key, depth, score, null, 0, 0);
+	}
+
+	/*
+	 Fills move from the stored entry for key if it was searched to at
+	 least minDepth, and returns whether it did.
+	*/
+	public boolean probeMove(long key, int minDepth, Brain.Move move) {
+		int slot = bucket(key);
+		synchronized (lockFor(slot)) {
+			for (int i = slot; i < slot + 2; i++) {
+				if (ages[i] != 0 && keys[i] == key && depths[i] >= minDepth && pieces[i] != null) {
+					move.piece = pieces[i];
+					move.x = xs[i];
+					move.y = ys[i];
+					move.score = scores[i];
+					move.complete = true;
+					hits.incrementAndGet();
+					return true;
+				}
+			}
+		}
+		misses.incrementAndGet();
+		return false;
+	}
+
+	// Only complete moves should be stored
+	public void storeMove(long key, int depth, Brain.Move move) {
+		store(key, depth, move.score, move.piece, move.x, move.y);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return (total == 0) ? 0 : (double)h / total;
+	}
+
+	public void resetCounters() {
+		hits.set(0);
+		misses.set(0);
+	}
+
+	public void clear() {
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			synchronized (locks[stripe]) {
+				for (int i = stripe * 2; i < keys.length; i += STRIPES * 2) {
+					ages[i] = 0;
+					ages[i + 1] = 0;
+					pieces[i] = null;
+					pieces[i + 1] = null;
+				}
+			}
+		}
+		resetCounters();
+	}
+
+	private void store(long key, int depth, double score, Piece piece, int x, int y) {
+		int slot = bucket(key);
+		int current = age;
+		synchronized (lockFor(slot)) {
+			int victim = -1;
+			for (int i = slot; i < slot + 2; i++) {
+				if (ages[i] != 0 && keys[i] == key) {
+					if (depths[i] > depth && ages[i] == current) return;
+					victim = i;
+					break;
+				}
+			}
+			if (victim < 0) victim = pickVictim(slot, slot + 1, current, depth);
+			if (victim < 0) return;
+
+			keys[victim] = key;
+			ages[victim] = current;
+			depths[victim] = depth;
+			scores[victim] = score;
+			pieces[victim] = piece;
+			xs[victim] = x;
+			ys[victim] = y;
+		}
+	}
+
+	// Empty first, then stale, then shallower; -1 when both are deeper and current
+	private int pickVictim(int a, int b, int current, int depth) {
+		if (ages[a] == 0) return a;
+		if (ages[b] == 0) return b;
+		if (ages[a] != current) return a;
+		if (ages[b] != current) return b;
+		int shallower = (depths[a] <= depths[b]) ? a : b;
+		return (depths[shallower] <= depth) ? shallower : -1;
+	}
+
+	private int bucket(long key) {
+		return (int)key & mask & ~1;
+	}
+
+	private Object lockFor(int slot) {
+		return locks[(slot >>> 1) & (STRIPES - 1)];
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+}
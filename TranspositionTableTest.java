@@ -0,0 +1,168 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TranspositionTableTest {
+
+	private TranspositionTable table;
+	private Piece[] pieces;
+
+	@BeforeEach
+	protected void setUp() {
+		table = new TranspositionTable(10);
+		pieces = Piece.getPieces();
+	}
+
+	@Test
+	public void probeStoreTest() {
+		Board board = new Board(6, 8);
+		long scoreKey = TranspositionTable.scoreKey(board);
+		long moveKey = TranspositionTable.moveKey(board, pieces[Piece.L1], 6);
+		assertNotEquals(scoreKey, moveKey);
+		assertNotEquals(moveKey, TranspositionTable.moveKey(board, pieces[Piece.L1].fastRotation(), 6));
+		assertNotEquals(moveKey, TranspositionTable.moveKey(board, pieces[Piece.L1], 5));
+		assertNotEquals(scoreKey, TranspositionTable.scoreKey(new Board(8, 6)));
+
+		assertTrue(Double.isNaN(table.probeScore(scoreKey)));
+		table.storeScore(scoreKey, 0, 12.5);
+		assertEquals(12.5, table.probeScore(scoreKey));
+
+		Brain.Move move = new Brain.Move();
+		assertFalse(table.probeMove(moveKey, 1, move));
+		move.piece = pieces[Piece.L1];
+		move.x = 3;
+		move.y = 1;
+		move.score = 7;
+		table.storeMove(moveKey, 1, move);
+
+		Brain.Move found = new Brain.Move();
+		assertFalse(table.probeMove(moveKey, 2, found));
+		assertTrue(table.probeMove(moveKey, 1, found));
+		assertSame(move.piece, found.piece);
+		assertEquals(3, found.x);
+		assertEquals(1, found.y);
+		assertEquals(7, found.score);
+
+		assertEquals(2, table.getHits());
+		assertEquals(3, table.getMisses());
+		assertEquals(0.4, table.getHitRate(), 1e-9);
+
+		table.clear();
+		assertTrue(Double.isNaN(table.probeScore(scoreKey)));
+		assertEquals(0, table.getHits());
+	}
+
+	@Test
+	public void replacementTest() {
+		// One bucket, so every key competes for the same two slots
+		TranspositionTable tiny = new TranspositionTable(1);
+		tiny.storeScore(1, 5, 1);
+		tiny.storeScore(2, 3, 2);
+		tiny.storeScore(3, 1, 3);
+		assertEquals(1, tiny.probeScore(1));
+		assertEquals(2, tiny.probeScore(2));
+		assertTrue(Double.isNaN(tiny.probeScore(3)));
+
+		tiny.storeScore(3, 4, 3);
+		assertEquals(1, tiny.probeScore(1));
+		assertTrue(Double.isNaN(tiny.probeScore(2)));
+		assertEquals(3, tiny.probeScore(3));
+
+		// A shallower result from a newer age still wins over stale ones
+		tiny.nextAge();
+		tiny.storeScore(4, 0, 4);
+		assertEquals(4, tiny.probeScore(4));
+		assertNotEquals(Double.isNaN(tiny.probeScore(1)), Double.isNaN(tiny.probeScore(3)));
+	}
+
+	@Test
+	public void cachingBrainTest() {
+		DefaultBrain plain = new DefaultBrain();
+		CachingBrain caching = new CachingBrain(table);
+		Board board = new Board(10, 24);
+		Random random = new Random(22);
+		for (int i = 0; i < 30; i++) {
+			table.nextAge();
+			for (Piece piece : pieces) {
+				Brain.Move expected = plain.bestMove(board, piece, 20, null);
+				Brain.Move actual = caching.bestMove(board, piece, 20, null);
+				assertTrue(expected.piece.equals(actual.piece));
+				assertEquals(expected.x, actual.x);
+				assertEquals(expected.y, actual.y);
+				assertEquals(expected.score, actual.score);
+			}
+			Brain.Move move = caching.bestMove(board, pieces[random.nextInt(pieces.length)], 20, null);
+			board.place(move.piece, move.x, move.y);
+			board.clearRows();
+			board.commit();
+		}
+		assertTrue(table.getHits() >= 30);
+	}
+
+	@Test
+	public void lastMoveKeyTest() {
+		// The same grid, finished by a different piece
+		Board stickLast = finishedBy(pieces[Piece.SQUARE], 2, pieces[Piece.STICK], 0);
+		Board squareLast = finishedBy(pieces[Piece.STICK], 0, pieces[Piece.SQUARE], 2);
+		assertEquals(stickLast.getHash(), squareLast.getHash());
+		assertNotEquals(TranspositionTable.scoreKey(stickLast), TranspositionTable.scoreKey(squareLast));
+		assertEquals(TranspositionTable.moveKey(stickLast, pieces[Piece.L1], 6), TranspositionTable.moveKey(squareLast, pieces[Piece.L1], 6));
+
+		// An empty grid left by a clear is not a fresh one
+		Board cleared = new Board(4, 8);
+		cleared.place(pieces[Piece.STICK].fastRotation(), 0, 0);
+		cleared.clearRows();
+		cleared.commit();
+		assertEquals(new Board(4, 8).getHash(), cleared.getHash());
+		assertNotEquals(TranspositionTable.scoreKey(new Board(4, 8)), TranspositionTable.scoreKey(cleared));
+	}
+
+	@Test
+	public void cachingFeatureBrainTest() {
+		// Landing height comes from the last move, so equal grids can rate differently
+		double[] weights = FeatureBrain.DEFAULT_WEIGHTS.clone();
+		weights[FeatureBrain.LANDING_HEIGHT] = 5;
+		FeatureBrain plain = new FeatureBrain(weights);
+		CachingBrain caching = new CachingBrain(new FeatureBrain(weights), table);
+
+		Board stickLast = finishedBy(pieces[Piece.SQUARE], 2, pieces[Piece.STICK], 0);
+		Board squareLast = finishedBy(pieces[Piece.STICK], 0, pieces[Piece.SQUARE], 2);
+		assertNotEquals(plain.rateBoard(stickLast), plain.rateBoard(squareLast));
+		assertEquals(plain.rateBoard(stickLast), caching.rateBoard(stickLast));
+		assertEquals(plain.rateBoard(squareLast), caching.rateBoard(squareLast));
+		assertEquals(plain.rateBoard(stickLast), caching.rateBoard(stickLast));
+	}
+
+	// A 6 x 8 board holding first then last, both dropped from row 0
+	private Board finishedBy(Piece first, int firstX, Piece last, int lastX) {
+		Board board = new Board(6, 8);
+		board.place(first, firstX, 0);
+		board.commit();
+		board.place(last, lastX, 0);
+		board.commit();
+		return board;
+	}
+
+	@Test
+	public void threadsTest() throws InterruptedException {
+		AtomicBoolean wrong = new AtomicBoolean();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread(() -> {
+				for (long key = offset; key < 20000; key += threads.length) {
+					table.storeScore(key * 0x9e3779b97f4a7c15L, 0, key);
+					double score = table.probeScore(key * 0x9e3779b97f4a7c15L);
+					if (!Double.isNaN(score) && score != key) wrong.set(true);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) thread.join();
+		assertFalse(wrong.get());
+		assertTrue(table.getHits() > 0);
+	}
+
+}
@@ -0,0 +1,357 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ Tunes FeatureBrain weights by the cross-entropy method, playing
+ headless games instead of watching the Swing UI. Each generation
+ draws population weight vectors from a normal distribution around
+ the current mean, plays every one of them on the same seeded games
+ (so they are compared on equal pieces), and moves the mean and
+ spread to those of the best eliteFraction.
+
+ Games are spread over a fixed pool of threads, one task per game.
+ They are played in rounds, and once a candidate has played
+ MIN_CULL_GAMES it is dropped from the rest of the generation if even
+ an upper confidence bound on its average (CULL_Z standard errors
+ above it) is below the current elite cutoff. Rows cleared vary about
+ as much as their mean from game to game, so one bad seed is not
+ enough; only candidates that are clearly losing stop early, and most
+ of the time goes to games that matter.
+
+ After every generation the tuner writes, to its directory:
+   gen-NNNN.txt          every candidate's weights, games and score
+   best-NNNN.properties  the best weights, loadable by FeatureBrain
+   state.properties      the mean and spread to resume from
+ and prints games per second per core for sizing runs. A tuner
+ started on a directory holding state.properties picks up there.
+
+ Usage: java WeightTuner [dir] [generations] [population] [games] [threads]
+*/
+public class WeightTuner {
+    public static final int WIDTH = JTetris.WIDTH;
+    public static final int HEIGHT = JTetris.HEIGHT;
+    public static final int TOP_SPACE = JTetris.TOP_SPACE;
+
+    public static final int MIN_CULL_GAMES = 3;
+    public static final double CULL_Z = 2;
+    public static final double INITIAL_SPREAD = 10;
+
+    private final File dir;
+    private final int threads;
+    private final ExecutorService executor;
+
+    private int population = 50;
+    private double eliteFraction = 0.2;
+    private int games = 8;
+    private int gamesPerRound = 2;
+    private int maxPieces = 2000;
+    private long seed = 25;
+
+    private int generation;
+    private double[] mean;
+    private double[] spread;
+
+    public WeightTuner(File dir, int threads) {
+        this.dir = dir;
+        this.threads = threads;
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "WeightTuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        mean = FeatureBrain.DEFAULT_WEIGHTS.clone();
+        spread = new double[FeatureBrain.FEATURE_COUNT];
+        Arrays.fill(spread, INITIAL_SPREAD);
+
+        File state = new File(dir, "state.properties");
+        if (state.isFile()) loadState(state);
+    }
+
+    public void setPopulation(int population) {
+        this.population = population;
+    }
+
+    public void setEliteFraction(double eliteFraction) {
+        this.eliteFraction = eliteFraction;
+    }
+
+    // Games per candidate, and how many of them to play between culls
+    public void setGames(int games, int gamesPerRound) {
+        if (games < 1 || gamesPerRound < 1) throw new RuntimeException("Need at least one game per round!");
+        this.games = games;
+        this.gamesPerRound = gamesPerRound;
+    }
+
+    // Games stop after this many pieces, so a good brain can't run forever
+    public void setMaxPieces(int maxPieces) {
+        this.maxPieces = maxPieces;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public double[] getMean() {
+        return mean.clone();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     Plays one game with no UI: pieces drawn from a Random
+     with the given seed the way JTetris draws them, each
+     placed where the brain says. Returns the rows cleared
+     before the stack passed HEIGHT or maxPieces were played.
+    */
+    public static int playGame(Brain brain, long seed, int maxPieces) {
+        Piece[] pieces = Piece.getPieces();
+        Random random = new Random(seed);
+        Board board = new Board(WIDTH, HEIGHT + TOP_SPACE);
+        board.setVerifyMode(Board.VERIFY_OFF);
+        Brain.Move move = new Brain.Move();
+
+        int rowsCleared = 0;
+        for (int count = 0; count < maxPieces; count++) {
+            Piece piece = pieces[(int) (pieces.length * random.nextDouble())];
+            if (brain.bestMove(board, piece, HEIGHT, move) == null) break;
+
+            board.place(move.piece, move.x, move.y);
+            rowsCleared += board.clearRows();
+            board.commit();
+            if (board.getMaxHeight() > HEIGHT) break;
+        }
+        return rowsCleared;
+    }
+
+    /**
+     Samples, plays and scores one generation, writes its
+     checkpoint and returns the best weights found.
+    */
+    public double[] runGeneration() throws IOException {
+        long start = System.nanoTime();
+        Random random = new Random(seed * 1000003 + generation);
+        int features = FeatureBrain.FEATURE_COUNT;
+        int eliteCount = Math.max(1, (int) Math.round(population * eliteFraction));
+
+        double[][] candidates = new double[population][features];
+        for (int c = 0; c < population; c++) {
+            for (int i = 0; i < features; i++) candidates[c][i] = mean[i] + spread[i] * random.nextGaussian();
+        }
+        long[] gameSeeds = new long[games];
+        for (int g = 0; g < games; g++) gameSeeds[g] = random.nextLong();
+
+        long[] totals = new long[population];
+        int[] played = new int[population];
+        boolean[] culled = new boolean[population];
+        int gamesPlayed = playRounds(candidates, gameSeeds, eliteCount, totals, played, culled);
+
+        // Elites come from the candidates that played every game, best first
+        Integer[] order = new Integer[population];
+        for (int c = 0; c < population; c++) order[c] = c;
+        Arrays.sort(order, (a, b) -> {
+            if (culled[a] != culled[b]) return culled[a] ? 1 : -1;
+            return Double.compare(average(totals, played, b), average(totals, played, a));
+        });
+        eliteCount = Math.min(eliteCount, population - countCulled(culled));
+
+        for (int i = 0; i < features; i++) {
+            double sum = 0;
+            for (int e = 0; e < eliteCount; e++) sum += candidates[order[e]][i];
+            double newMean = sum / eliteCount;
+            double squares = 0;
+            for (int e = 0; e < eliteCount; e++) squares += Math.pow(candidates[order[e]][i] - newMean, 2);
+            mean[i] = newMean;
+            // A little extra noise, shrinking over time, keeps the spread from collapsing early
+            spread[i] = Math.sqrt(squares / eliteCount) + 1.0 / (generation + 1);
+        }
+
+        double[] best = candidates[order[0]];
+        writeCheckpoint(candidates, totals, played, culled, order, best);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int cores = Math.min(threads, Runtime.getRuntime().availableProcessors());
+        System.out.printf("generation %d: best %.1f rows, mean of elite %.1f, %d games (%d culled candidates), %.2f games/sec/core%n",
+                generation, average(totals, played, order[0]), eliteAverage(totals, played, order, eliteCount),
+                gamesPlayed, countCulled(culled), gamesPlayed / seconds / cores);
+
+        generation++;
+        writeState();
+        return best.clone();
+    }
+
+    /*
+     Plays every candidate on every game in rounds of gamesPerRound,
+     culling the clearly losing ones between rounds. Fills totals,
+     played and culled per candidate and returns the games played.
+    */
+    int playRounds(double[][] candidates, long[] gameSeeds, int eliteCount, long[] totals, int[] played, boolean[] culled) {
+        int count = candidates.length;
+        double[] squares = new double[count];
+        int gamesPlayed = 0;
+
+        for (int first = 0; first < gameSeeds.length; first += gamesPerRound) {
+            int last = Math.min(gameSeeds.length, first + gamesPerRound);
+            List<Future<Integer>> results = new ArrayList<>();
+            List<Integer> owners = new ArrayList<>();
+            for (int c = 0; c < count; c++) {
+                if (culled[c]) continue;
+                Brain brain = new FeatureBrain(candidates[c]);
+                for (int g = first; g < last; g++) {
+                    final long gameSeed = gameSeeds[g];
+                    results.add(executor.submit(() -> playGame(brain, gameSeed, maxPieces)));
+                    owners.add(c);
+                }
+            }
+            for (int i = 0; i < results.size(); i++) {
+                int rows = get(results.get(i));
+                totals[owners.get(i)] += rows;
+                squares[owners.get(i)] += (double) rows * rows;
+                played[owners.get(i)]++;
+            }
+            gamesPlayed += results.size();
+
+            if (last < gameSeeds.length) {
+                double cutoff = eliteCutoff(totals, played, culled, eliteCount);
+                for (int c = 0; c < count; c++) {
+                    if (!culled[c] && played[c] >= MIN_CULL_GAMES && upperBound(totals, squares, played, c) < cutoff) culled[c] = true;
+                }
+            }
+        }
+        return gamesPlayed;
+    }
+
+    public double[] run(int generations) throws IOException {
+        double[] best = null;
+        for (int i = 0; i < generations; i++) best = runGeneration();
+        return best;
+    }
+
+    private static double average(long[] totals, int[] played, int c) {
+        return (played[c] == 0) ? 0 : (double) totals[c] / played[c];
+    }
+
+    // The average plus CULL_Z standard errors, from the sample variance of the games played
+    private static double upperBound(long[] totals, double[] squares, int[] played, int c) {
+        int n = played[c];
+        double mean = average(totals, played, c);
+        double variance = Math.max(0, (squares[c] - n * mean * mean) / (n - 1));
+        return mean + CULL_Z * Math.sqrt(variance / n);
+    }
+
+    private static double eliteAverage(long[] totals, int[] played, Integer[] order, int eliteCount) {
+        double sum = 0;
+        for (int e = 0; e < eliteCount; e++) sum += average(totals, played, order[e]);
+        return sum / eliteCount;
+    }
+
+    // The eliteCount-th best average among the candidates still playing
+    private static double eliteCutoff(long[] totals, int[] played, boolean[] culled, int eliteCount) {
+        double[] averages = new double[totals.length];
+        int count = 0;
+        for (int c = 0; c < totals.length; c++) {
+            if (!culled[c]) averages[count++] = average(totals, played, c);
+        }
+        if (count < eliteCount) return 0;
+        Arrays.sort(averages, 0, count);
+        return averages[count - eliteCount];
+    }
+
+    private static int countCulled(boolean[] culled) {
+        int count = 0;
+        for (boolean c : culled) if (c) count++;
+        return count;
+    }
+
+    private static int get(Future<Integer> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a game!", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Game failed!", e.getCause());
+        }
+    }
+
+    private void writeCheckpoint(double[][] candidates, long[] totals, int[] played, boolean[] culled, Integer[] order, double[] best) throws IOException {
+        StringBuilder table = new StringBuilder();
+        table.append("# generation ").append(generation).append(", best first\n");
+        table.append("# candidate games score culled");
+        for (String name : FeatureBrain.FEATURE_NAMES) table.append(' ').append(name);
+        table.append('\n');
+        for (int c : order) {
+            table.append(c).append(' ').append(played[c]).append(' ').append(average(totals, played, c)).append(' ').append(culled[c]);
+            for (double w : candidates[c]) table.append(' ').append(w);
+            table.append('\n');
+        }
+        write(String.format("gen-%04d.txt", generation), table.toString());
+
+        Properties weights = new Properties();
+        for (int i = 0; i < best.length; i++) weights.setProperty(FeatureBrain.FEATURE_NAMES[i], Double.toString(best[i]));
+        write(String.format("best-%04d.properties", generation), store(weights, "best of generation " + generation));
+    }
+
+    private void writeState() throws IOException {
+        Properties state = new Properties();
+        state.setProperty("generation", Integer.toString(generation));
+        state.setProperty("seed", Long.toString(seed));
+        for (int i = 0; i < mean.length; i++) {
+            state.setProperty("mean." + FeatureBrain.FEATURE_NAMES[i], Double.toString(mean[i]));
+            state.setProperty("spread." + FeatureBrain.FEATURE_NAMES[i], Double.toString(spread[i]));
+        }
+        write("state.properties", store(state, "WeightTuner state"));
+    }
+
+    private void loadState(File file) {
+        Properties state = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            state.load(new InputStreamReader(in, "UTF-8"));
+            generation = Integer.parseInt(state.getProperty("generation"));
+            seed = Long.parseLong(state.getProperty("seed"));
+            for (int i = 0; i < mean.length; i++) {
+                mean[i] = Double.parseDouble(state.getProperty("mean." + FeatureBrain.FEATURE_NAMES[i]));
+                spread[i] = Double.parseDouble(state.getProperty("spread." + FeatureBrain.FEATURE_NAMES[i]));
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Could not read tuner state: " + file, e);
+        }
+    }
+
+    private static String store(Properties properties, String comment) throws IOException {
+        StringWriter out = new StringWriter();
+        properties.store(out, comment);
+        return out.toString();
+    }
+
+    // Writes through a temporary file, so a crash never leaves a half-written checkpoint
+    private void write(String name, String contents) throws IOException {
+        Files.createDirectories(dir.toPath());
+        Path temp = Files.createTempFile(dir.toPath(), name, ".tmp");
+        Files.write(temp, contents.getBytes("UTF-8"));
+        Files.move(temp, new File(dir, name).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : "tuning");
+        int generations = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        int threads = (args.length > 4) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        WeightTuner tuner = new WeightTuner(dir, threads);
+        if (args.length > 2) tuner.setPopulation(Integer.parseInt(args[2]));
+        if (args.length > 3) tuner.setGames(Integer.parseInt(args[3]), Math.max(1, Integer.parseInt(args[3]) / 4));
+        try {
+            tuner.run(generations);
+        } finally {
+            tuner.shutdown();
+        }
+    }
+}
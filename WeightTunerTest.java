@@ -0,0 +1,90 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeightTunerTest {
+
+	private File dir;
+
+	@BeforeEach
+	protected void setUp() throws IOException {
+		dir = Files.createTempDirectory("tuner").toFile();
+	}
+
+	@AfterEach
+	protected void tearDown() {
+		for (File file : dir.listFiles()) file.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void playGameTest() {
+		DefaultBrain brain = new DefaultBrain();
+		int rows = WeightTuner.playGame(brain, 7, 200);
+		assertTrue(rows > 0);
+		assertEquals(rows, WeightTuner.playGame(brain, 7, 200));
+		assertEquals(0, WeightTuner.playGame(brain, 7, 0));
+	}
+
+	@Test
+	public void cullingTest() {
+		// Four copies of the default weights and one that stacks as high as it can
+		double[] bad = FeatureBrain.DEFAULT_WEIGHTS.clone();
+		for (int i = 0; i < bad.length; i++) bad[i] = -bad[i];
+		double[][] candidates = {
+			FeatureBrain.DEFAULT_WEIGHTS, FeatureBrain.DEFAULT_WEIGHTS, bad,
+			FeatureBrain.DEFAULT_WEIGHTS, FeatureBrain.DEFAULT_WEIGHTS,
+		};
+		long[] seeds = {1, 2, 3, 4, 5, 6, 7, 8};
+
+		WeightTuner tuner = new WeightTuner(dir, 2);
+		tuner.setGames(seeds.length, 1);
+		tuner.setMaxPieces(100);
+		long[] totals = new long[candidates.length];
+		int[] played = new int[candidates.length];
+		boolean[] culled = new boolean[candidates.length];
+		try {
+			tuner.playRounds(candidates, seeds, 2, totals, played, culled);
+		} finally {
+			tuner.shutdown();
+		}
+
+		assertTrue(culled[2]);
+		assertEquals(WeightTuner.MIN_CULL_GAMES, played[2]);
+		for (int c : new int[]{0, 1, 3, 4}) {
+			assertFalse(culled[c]);
+			assertEquals(seeds.length, played[c]);
+			assertEquals(totals[0], totals[c]);
+		}
+	}
+
+	@Test
+	public void checkpointTest() throws IOException {
+		WeightTuner tuner = new WeightTuner(dir, 2);
+		tuner.setPopulation(6);
+		tuner.setGames(2, 1);
+		tuner.setMaxPieces(40);
+		double[] best;
+		try {
+			best = tuner.runGeneration();
+		} finally {
+			tuner.shutdown();
+		}
+		assertEquals(1, tuner.getGeneration());
+
+		assertTrue(new File(dir, "gen-0000.txt").isFile());
+		assertArrayEquals(best, FeatureBrain.loadWeights(new File(dir, "best-0000.properties").getPath()));
+
+		// A new tuner on the same directory carries on where this one stopped
+		WeightTuner resumed = new WeightTuner(dir, 1);
+		resumed.shutdown();
+		assertEquals(1, resumed.getGeneration());
+		assertArrayEquals(tuner.getMean(), resumed.getMean());
+
+		assertThrows(RuntimeException.class, () -> tuner.setGames(2, 0));
+	}
+
+}